@@ -0,0 +1,26 @@
+package nl.pvanassen.raceai;
+
+import java.util.Random;
+
+/**
+ * Access to package private track setup for benchmarks in other packages.
+ */
+public class BenchmarkTracks {
+
+    private BenchmarkTracks() {
+    }
+
+    public static Track headless() {
+        return new Track(true);
+    }
+
+    /**
+     * Gives every car a score as if it drove a generation, most of them poorly and a few far.
+     */
+    public static void scoreCars(Track track, Random random) {
+        CarStates states = track.getCarStates();
+        for (int slot = 0; slot < states.getSize(); slot++) {
+            states.score[slot] = -Math.log(1 - random.nextDouble()) * 10_000;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package nl.pvanassen.raceai;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sensor rays and collision checks of a single car against the real track1 mask, from positions on the track.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SensingBenchmark {
+
+    private static final int POSITIONS = 4096;
+
+    private LinesOfSightCalculator calculator;
+
+    private DrivableMask mask;
+
+    private CarStates states;
+
+    private LinesOfSight[] linesOfSight;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Track track = new Track(true);
+        calculator = track.getLinesOfSightCalculator();
+        mask = track.getDrivableMask();
+        states = track.getCarStates();
+
+        Random random = new Random(42);
+        linesOfSight = new LinesOfSight[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            int x;
+            int y;
+            do {
+                x = random.nextInt(mask.getWidth());
+                y = random.nextInt(mask.getHeight());
+            } while (!mask.isDrivable(x, y));
+            linesOfSight[i] = LinesOfSight.builder().x(x).y(y).direction(random.nextInt(361)).build();
+            int slot = track.createCar(CarType.createNormal("bench-" + i)).getSlot();
+            states.x[slot] = x;
+            states.y[slot] = y;
+            states.direction[slot] = linesOfSight[i].getDirection();
+        }
+    }
+
+    @Benchmark
+    public LinesOfSightDistances calculateDistances() {
+        next = (next + 1) & (POSITIONS - 1);
+        return calculator.calculate(linesOfSight[next]);
+    }
+
+    @Benchmark
+    public boolean collisionDetection() {
+        next = (next + 1) & (POSITIONS - 1);
+        boolean collides = states.collides(next, mask);
+        // Keep every car in the game for the next round
+        states.alive[next] = true;
+        return collides;
+    }
+}
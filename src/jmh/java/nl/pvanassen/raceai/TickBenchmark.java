@@ -0,0 +1,46 @@
+package nl.pvanassen.raceai;
+
+import nl.pvanassen.raceai.ai.Population;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full training step: every live car is moved, collided, sensed and driven by its network. A new generation is
+ * bred whenever the population is done, so the step keeps measuring cars that are driving.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TickBenchmark {
+
+    @Param({"1000", "50000"})
+    public int populationSize;
+
+    private Track track;
+
+    private Population population;
+
+    @Setup
+    public void setUp() {
+        track = new Track(true);
+        population = new Population(track, populationSize);
+    }
+
+    @Benchmark
+    public int tick() {
+        track.tick(population::drive);
+        if (population.done()) {
+            population.naturalSelection();
+        }
+        return track.getCarStates().getAliveCount();
+    }
+
+    @TearDown
+    public void tearDown() {
+        population.close();
+    }
+}
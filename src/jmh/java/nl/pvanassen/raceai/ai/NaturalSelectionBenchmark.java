@@ -0,0 +1,60 @@
+package nl.pvanassen.raceai.ai;
+
+import nl.pvanassen.raceai.BenchmarkTracks;
+import nl.pvanassen.raceai.Track;
+import nl.pvanassen.raceai.TrainingConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation turnover of a full size population, per selection strategy. The cars never drive, they get random
+ * scores before every turnover instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NaturalSelectionBenchmark {
+
+    @Param({"50000"})
+    public int populationSize;
+
+    @Param({"roulette", "tournament", "rank", "truncation"})
+    public String selection;
+
+    private final Random random = new Random(42);
+
+    private Track track;
+
+    private Population population;
+
+    @Setup
+    public void setUp() {
+        track = BenchmarkTracks.headless();
+        TrainingConfiguration configuration = TrainingConfiguration.builder()
+                .populationSize(populationSize)
+                .selection(selection)
+                .build();
+        population = new Population(track, populationSize, SelectionStrategy.of(configuration));
+    }
+
+    @Setup(Level.Invocation)
+    public void scoreCars() {
+        BenchmarkTracks.scoreCars(track, random);
+    }
+
+    @Benchmark
+    public Population naturalSelection() {
+        population.naturalSelection();
+        return population;
+    }
+
+    @TearDown
+    public void tearDown() {
+        population.close();
+    }
+}
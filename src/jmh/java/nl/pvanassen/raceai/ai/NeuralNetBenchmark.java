@@ -0,0 +1,75 @@
+package nl.pvanassen.raceai.ai;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The forward pass and breeding of a single car brain, next to the matrix operations they replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NeuralNetBenchmark {
+
+    private final double[] input = new double[5];
+
+    private NeuralNet brain;
+
+    private NeuralNet partner;
+
+    private NeuralNet child;
+
+    private final CounterRandom random = new CounterRandom(42);
+
+    private Matrix weights;
+
+    private Matrix partnerWeights;
+
+    private Matrix column;
+
+    @Setup
+    public void setUp() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextDouble(0, 100);
+        }
+        brain = new NeuralNet(5, 6, 9, 3, "brain");
+        partner = new NeuralNet(5, 6, 9, 3, "partner");
+        child = new NeuralNet(5, 6, 9, 3, "child");
+
+        weights = new Matrix(6, 7);
+        partnerWeights = new Matrix(6, 7);
+        column = weights.singleColumnMatrixFromArray(new double[] {1, 2, 3, 4, 5, 6, 1});
+    }
+
+    @Benchmark
+    public double[] output() {
+        return brain.output(input);
+    }
+
+    @Benchmark
+    public int decide() {
+        return brain.decide(input);
+    }
+
+    @Benchmark
+    public Matrix matrixDot() {
+        return weights.dot(column);
+    }
+
+    @Benchmark
+    public NeuralNet crossoverAndMutateInto() {
+        brain.crossoverAndMutateInto(partner, 0.01f, child, random);
+        return child;
+    }
+
+    @Benchmark
+    public Matrix matrixCrossoverAndMutate() {
+        return weights.crossoverAndMutate(partnerWeights, 0.01f);
+    }
+}
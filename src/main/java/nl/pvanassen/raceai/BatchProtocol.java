@@ -0,0 +1,83 @@
+package nl.pvanassen.raceai;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * What coordinator and workers say to each other: a batch of genomes one way, their scores the other way.
+ * Both start with a magic number and the batch id, so a confused peer fails fast.
+ */
+class BatchProtocol {
+
+    private static final int BATCH_MAGIC = 0x42415443;
+
+    private static final int SCORES_MAGIC = 0x53434F52;
+
+    private BatchProtocol() {
+    }
+
+    static class Batch {
+        final int id;
+
+        final int count;
+
+        final int genomeLength;
+
+        final float[] genomes;
+
+        Batch(int id, int count, int genomeLength, float[] genomes) {
+            this.id = id;
+            this.count = count;
+            this.genomeLength = genomeLength;
+            this.genomes = genomes;
+        }
+    }
+
+    static void writeBatch(DataOutputStream out, int id, float[] genomes, int from, int count, int genomeLength) throws IOException {
+        out.writeInt(BATCH_MAGIC);
+        out.writeInt(id);
+        out.writeInt(count);
+        out.writeInt(genomeLength);
+        ByteBuffer bytes = ByteBuffer.allocate(count * genomeLength * Float.BYTES);
+        bytes.asFloatBuffer().put(genomes, from * genomeLength, count * genomeLength);
+        out.write(bytes.array());
+        out.flush();
+    }
+
+    static Batch readBatch(DataInputStream in) throws IOException {
+        if (in.readInt() != BATCH_MAGIC) {
+            throw new IOException("Not a batch of genomes");
+        }
+        int id = in.readInt();
+        int count = in.readInt();
+        int genomeLength = in.readInt();
+        byte[] bytes = new byte[count * genomeLength * Float.BYTES];
+        in.readFully(bytes);
+        float[] genomes = new float[count * genomeLength];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(genomes);
+        return new Batch(id, count, genomeLength, genomes);
+    }
+
+    static void writeScores(DataOutputStream out, int id, double[] scores) throws IOException {
+        out.writeInt(SCORES_MAGIC);
+        out.writeInt(id);
+        out.writeInt(scores.length);
+        ByteBuffer bytes = ByteBuffer.allocate(scores.length * Double.BYTES);
+        bytes.asDoubleBuffer().put(scores);
+        out.write(bytes.array());
+        out.flush();
+    }
+
+    static double[] readScores(DataInputStream in, int id, int count) throws IOException {
+        if (in.readInt() != SCORES_MAGIC || in.readInt() != id || in.readInt() != count) {
+            throw new IOException("Scores do not belong to batch " + id);
+        }
+        byte[] bytes = new byte[count * Double.BYTES];
+        in.readFully(bytes);
+        double[] scores = new double[count];
+        ByteBuffer.wrap(bytes).asDoubleBuffer().get(scores);
+        return scores;
+    }
+}
@@ -4,214 +4,110 @@ import lombok.Getter;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Line2D;
-import java.awt.image.BufferedImage;
-import java.util.List;
 
 import static java.lang.Math.*;
-import static nl.pvanassen.raceai.ImageHelper.loadImage;
 
+/**
+ * View on one slot of {@link CarStates}.
+ */
 public class Car {
 
-    private static final BufferedImage CAR = loadImage("car.png");
-
-    private static final BufferedImage CRASHED = loadImage("crashed.png");
-
-    private static final BufferedImage BEST = loadImage("winner.png");
-
-    private static final double MAX_SPEED = 100;
-    private static final double MAX_ACCELERATION = 0.1;
-    private static final double MAX_DECELERATION = 0.2;
-    private static final double MAX_TURN = 4;
-
-    private final List<Line2D> checkpoints;
-
-    private Line2D nextCheckpoint;
-
-    @Getter
-    private boolean crashed = false;
-
-    @Getter
-    private double x;
-    @Getter
-    private double y;
-
-    private double direction = 180;
-    private double speed = 0;
+    private final CarStates states;
 
     @Getter
-    private Shape shape;
+    private final int slot;
 
     @Getter
-    private double score;
+    private final String id;
 
-    private double distanceRight;
+    Car(CarType carType, CarStates states, int slot) {
+        this.states = states;
+        this.slot = slot;
+        this.id = "Car-" + carType.getId();
+    }
 
-    private double distanceAhead;
+    public boolean isCrashed() {
+        return !states.alive[slot];
+    }
 
-    private double distanceLeft;
+    public double getX() {
+        return states.x[slot];
+    }
 
-    private long start = Long.MIN_VALUE;
+    public double getY() {
+        return states.y[slot];
+    }
 
-    @Getter
-    private long lifetime;
+    public double getScore() {
+        return states.score[slot];
+    }
 
-    @Getter
-    private final String id;
+    public long getLifetime() {
+        return states.ticks[slot];
+    }
 
-    private final boolean best;
+    public int getCheckpointsPassed() {
+        return states.checkpointsPassed[slot];
+    }
 
-    private boolean lapComplete = false;
+    public Shape getShape() {
+        return bodyTransform().createTransformedShape(new Rectangle(20, 10));
+    }
 
-    Car(CarType carType, Point startLocation, List<Line2D> checkpoints) {
-        this.checkpoints = checkpoints;
-        nextCheckpoint = checkpoints.get(0);
-        x = startLocation.x;
-        y = startLocation.y;
-        this.id = "Car-" + carType.getId();
-        this.best = carType.isBest();
-    }
-
-    public void tick(BufferedImage buffer) {
-        if (start == Long.MIN_VALUE) {
-            start = System.currentTimeMillis();
-        }
-        Graphics2D graphics = (Graphics2D)buffer.getGraphics();
-
-        if (crashed) {
-            draw(graphics, CRASHED);
-            return;
-        }
-
-        if (System.currentTimeMillis() - start > 5000 && speed == 0) {
-            crashed();
-            draw(graphics, CRASHED);
-            return;
-        }
-
-        if (System.currentTimeMillis() - start > 10000 && checkpoints.indexOf(nextCheckpoint) < 2 && !lapComplete) {
-            crashed();
-            draw(graphics, CRASHED);
-            return;
-        }
-
-        if (System.currentTimeMillis() - start > 60000) {
-            crashed();
-            draw(graphics, CRASHED);
-            return;
-        }
-
-        if (speed > 0) {
-            if (nextCheckpoint.ptLineDist(x, y) < 10d) {
-                score += 500;
-                int pos = checkpoints.indexOf(nextCheckpoint) + 1;
-                if (pos == checkpoints.size()) {
-                    pos = 0;
-                    lapComplete = true;
-                }
-                nextCheckpoint = checkpoints.get(pos);
-            }
-        }
-
-        x += speed * sin(toRadians(90 - direction));
-        y += speed * cos(toRadians(90 - direction));
-
-        score += (speed * 100);
-        if (best) {
-            draw(graphics, BEST);
-        }
-        else {
-            draw(graphics, CAR);
-        }
-    }
-
-    private void draw(Graphics2D graphics, BufferedImage image) {
+    private AffineTransform bodyTransform() {
         AffineTransform at = new AffineTransform();
-        at.translate(x, y);
-        at.rotate(toRadians(direction));
-        graphics.drawImage(image, at, null);
-
-        Rectangle rectangle = new Rectangle(20, 10);
+        at.translate(states.x[slot], states.y[slot]);
+        at.rotate(toRadians(states.direction[slot]));
         at.translate(0, 5);
-        shape = at.createTransformedShape(rectangle);
+        return at;
+    }
 
-        if (Global.DEBUG) {
-            graphics.setColor(Color.BLUE);
-            graphics.draw(shape);
-        }
+    public void action(Accelerate accelerate, Turn turn) {
+        states.action(slot, accelerate, turn);
+    }
 
-        at.translate(10, 5);
+    public void reset(boolean best) {
+        states.reset(slot, best);
+    }
 
-        if (Global.DEBUG) {
-            graphics.setColor(Color.BLUE);
-            graphics.setFont(graphics.getFont().deriveFont(16f));
-            graphics.drawString(id, (int) x, (int) y);
-        }
+    public void crashed() {
+        states.alive[slot] = false;
     }
 
-    public void action(Accelerate accelerate, Turn turn) {
-        if (crashed) {
-            return;
-        }
-        if (accelerate == Accelerate.ACCELERATE) {
-            speed = Math.min(MAX_SPEED, speed + MAX_ACCELERATION);
-        }
-        if (accelerate == Accelerate.DECELERATE) {
-            speed = Math.max(0, speed - MAX_DECELERATION);
-        }
-        if (speed == 0) {
-            return;
-        }
-        double maxTurn;
-        if (speed < 0.3) {
-            maxTurn = 1;
-        }
-        else {
-            maxTurn = MAX_TURN;
-        }
-        if (turn == Turn.LEFT) {
-            direction -= maxTurn;
-        }
-        if (turn == Turn.RIGHT) {
-            direction += maxTurn;
-        }
-        if (direction < 0) {
-            direction += 360;
-        }
-        if (direction > 360) {
-            direction -= 360;
-        }
+    /**
+     * Ends the car with a score it got on another track.
+     */
+    public void stopped(double score) {
+        states.score[slot] = score;
+        states.alive[slot] = false;
     }
 
-    public void crashed() {
-        lifetime = System.currentTimeMillis() - start;
-        crashed = true;
-    }
-
-    LinesOfSightWithCallback getLinesOfSight() {
-        return LinesOfSightWithCallback.builder()
-                .linesOfSight(LinesOfSight.builder()
-                        .x((int)x)
-                        .y((int)y)
-                        .direction((int)direction)
-                        .build())
-                .linesOfSightDistances(this::recievedDistances)
-                .build();
+    LinesOfSight getLinesOfSight() {
+        return states.getLinesOfSight(slot);
     }
 
     void recievedDistances(LinesOfSightDistances linesOfSightDistances) {
-        distanceRight = linesOfSightDistances.getDistanceRight();
-        distanceAhead = linesOfSightDistances.getDistanceAhead();
-        distanceLeft = linesOfSightDistances.getDistanceLeft();
+        states.receivedDistances(slot, linesOfSightDistances);
+    }
+
+    /**
+     * Writes the same values as {@link CarMetrics#getInput()} without creating the metrics.
+     */
+    public void fillInput(double[] input) {
+        input[0] = states.speed[slot];
+        input[1] = states.direction[slot];
+        input[2] = states.distanceRight[slot];
+        input[3] = states.distanceAhead[slot];
+        input[4] = states.distanceLeft[slot];
     }
 
     public CarMetrics getCarMetrics() {
         return CarMetrics.builder()
-                .direction(direction)
-                .speed(speed)
-                .distanceLeft(distanceLeft)
-                .distanceAhead(distanceAhead)
-                .distanceRight(distanceRight)
+                .direction(states.direction[slot])
+                .speed(states.speed[slot])
+                .distanceLeft(states.distanceLeft[slot])
+                .distanceAhead(states.distanceAhead[slot])
+                .distanceRight(states.distanceRight[slot])
                 .build();
     }
 }
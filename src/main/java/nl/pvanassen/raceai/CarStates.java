@@ -0,0 +1,480 @@
+package nl.pvanassen.raceai;
+
+import lombok.Getter;
+
+import java.awt.*;
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.Math.*;
+import static nl.pvanassen.raceai.Global.FPS;
+import static nl.pvanassen.raceai.Global.STAGNATION_TICKS;
+
+/**
+ * The simulation state of all cars on a track, kept in parallel primitive arrays indexed by car slot.
+ * {@link Car} is a view on one slot of these arrays.
+ */
+public class CarStates {
+
+    private static final double MAX_SPEED = 100;
+    private static final double MAX_ACCELERATION = 0.1;
+    private static final double MAX_DECELERATION = 0.2;
+    private static final double MAX_TURN = 4;
+
+    // Limits are counted in simulation ticks, so a headless run is not bound to the wall clock
+    private static final int IDLE_TICKS = 5 * FPS;
+    private static final int FIRST_CHECKPOINTS_TICKS = 10 * FPS;
+    private static final int MAX_TICKS = 60 * FPS;
+
+    private static final int CAR_LENGTH = 20;
+    private static final int CAR_WIDTH = 10;
+
+    // A car that drives this far but ends up within the radius of where it was the window before is looping
+    private static final int LOOP_WINDOW_TICKS = 2 * FPS;
+    private static final double LOOP_RADIUS = 2 * CAR_LENGTH;
+    private static final double LOOP_DISTANCE = 4 * LOOP_RADIUS;
+
+    // A car this far back behind its last checkpoint has turned back over it
+    private static final double BACKWARDS_DISTANCE = 10;
+
+    private static final int START_DIRECTION = 180;
+
+    private final Point startLocation;
+
+    private final ProgressField progressField;
+
+    private final double lapLength;
+
+    // Progress in a lap of every checkpoint
+    private final float[] checkpoints;
+
+    @Getter
+    private int size = 0;
+
+    // Compact list of the slots still driving, rebuilt after cars are added or reset
+    private int[] aliveSlots;
+
+    @Getter
+    private int aliveCount = 0;
+
+    private boolean aliveSlotsStale = false;
+
+    double[] x;
+    double[] y;
+    double[] direction;
+    double[] speed;
+    double[] score;
+
+    double[] distanceRight;
+    double[] distanceAhead;
+    double[] distanceLeft;
+
+    int[] nextCheckpoint;
+    int[] checkpointsPassed;
+    int[] laps;
+    int[] ticks;
+
+    // Distance along the track from the start line, counting laps. Furthest so far and the tick it got there.
+    double[] progress;
+    double[] bestProgress;
+    int[] progressTick;
+
+    // Where the car was at the start of the current loop window and how far it drove since
+    double[] anchorX;
+    double[] anchorY;
+    double[] odometer;
+
+    boolean[] alive;
+    boolean[] lapComplete;
+    boolean[] best;
+
+    CarStates(Point startLocation, List<Line2D> checkpoints, DrivableMask mask, int capacity) {
+        this.startLocation = startLocation;
+        this.progressField = ProgressField.of(mask, startLocation, START_DIRECTION);
+        this.lapLength = progressField.getLapLength();
+        this.checkpoints = progressField.checkpoints(checkpoints);
+        allocate(Math.max(1, capacity));
+    }
+
+    private void allocate(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        direction = new double[capacity];
+        speed = new double[capacity];
+        score = new double[capacity];
+        distanceRight = new double[capacity];
+        distanceAhead = new double[capacity];
+        distanceLeft = new double[capacity];
+        nextCheckpoint = new int[capacity];
+        checkpointsPassed = new int[capacity];
+        laps = new int[capacity];
+        ticks = new int[capacity];
+        progress = new double[capacity];
+        bestProgress = new double[capacity];
+        progressTick = new int[capacity];
+        anchorX = new double[capacity];
+        anchorY = new double[capacity];
+        odometer = new double[capacity];
+        alive = new boolean[capacity];
+        lapComplete = new boolean[capacity];
+        best = new boolean[capacity];
+        aliveSlots = new int[capacity];
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        score = Arrays.copyOf(score, capacity);
+        distanceRight = Arrays.copyOf(distanceRight, capacity);
+        distanceAhead = Arrays.copyOf(distanceAhead, capacity);
+        distanceLeft = Arrays.copyOf(distanceLeft, capacity);
+        nextCheckpoint = Arrays.copyOf(nextCheckpoint, capacity);
+        checkpointsPassed = Arrays.copyOf(checkpointsPassed, capacity);
+        laps = Arrays.copyOf(laps, capacity);
+        ticks = Arrays.copyOf(ticks, capacity);
+        progress = Arrays.copyOf(progress, capacity);
+        bestProgress = Arrays.copyOf(bestProgress, capacity);
+        progressTick = Arrays.copyOf(progressTick, capacity);
+        anchorX = Arrays.copyOf(anchorX, capacity);
+        anchorY = Arrays.copyOf(anchorY, capacity);
+        odometer = Arrays.copyOf(odometer, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        lapComplete = Arrays.copyOf(lapComplete, capacity);
+        best = Arrays.copyOf(best, capacity);
+        aliveSlots = Arrays.copyOf(aliveSlots, capacity);
+    }
+
+    int add(boolean best) {
+        if (size == x.length) {
+            grow();
+        }
+        int slot = size++;
+        reset(slot, best);
+        return slot;
+    }
+
+    void reset(int slot, boolean best) {
+        x[slot] = startLocation.x;
+        y[slot] = startLocation.y;
+        direction[slot] = START_DIRECTION;
+        speed[slot] = 0;
+        score[slot] = 0;
+        distanceRight[slot] = 0;
+        distanceAhead[slot] = 0;
+        distanceLeft[slot] = 0;
+        nextCheckpoint[slot] = 0;
+        checkpointsPassed[slot] = 0;
+        laps[slot] = 0;
+        ticks[slot] = 0;
+        progress[slot] = 0;
+        bestProgress[slot] = 0;
+        progressTick[slot] = 0;
+        anchorX[slot] = startLocation.x;
+        anchorY[slot] = startLocation.y;
+        odometer[slot] = 0;
+        alive[slot] = true;
+        lapComplete[slot] = false;
+        this.best[slot] = best;
+        aliveSlotsStale = true;
+    }
+
+    void clear() {
+        size = 0;
+        aliveCount = 0;
+        aliveSlotsStale = false;
+    }
+
+    public boolean isAlive(int slot) {
+        return alive[slot];
+    }
+
+    /**
+     * The slot of the index-th car that is still driving.
+     */
+    public int aliveSlot(int index) {
+        return aliveSlots[index];
+    }
+
+    /**
+     * Brings the alive slots up to date. Cheap when nothing was added or reset: it then only drops the cars that
+     * crashed since the last call, in time proportional to the number of cars that were still alive.
+     */
+    void updateAliveSlots() {
+        if (aliveSlotsStale) {
+            aliveCount = 0;
+            for (int slot = 0; slot < size; slot++) {
+                if (alive[slot]) {
+                    aliveSlots[aliveCount++] = slot;
+                }
+            }
+            aliveSlotsStale = false;
+            return;
+        }
+        int count = 0;
+        for (int i = 0; i < aliveCount; i++) {
+            int slot = aliveSlots[i];
+            if (alive[slot]) {
+                aliveSlots[count++] = slot;
+            }
+        }
+        aliveCount = count;
+    }
+
+    /**
+     * Moves the car in the given slot one tick, or ends it when it runs out of time.
+     */
+    void tick(int slot) {
+        if (!alive[slot]) {
+            return;
+        }
+        int lifetime = ticks[slot];
+        if (lifetime > IDLE_TICKS && speed[slot] == 0) {
+            alive[slot] = false;
+            return;
+        }
+        if (lifetime > FIRST_CHECKPOINTS_TICKS && nextCheckpoint[slot] < 2 && !lapComplete[slot]) {
+            alive[slot] = false;
+            return;
+        }
+        if (lifetime > MAX_TICKS) {
+            alive[slot] = false;
+            return;
+        }
+
+        double speed = this.speed[slot];
+        x[slot] += speed * sin(toRadians(90 - direction[slot]));
+        y[slot] += speed * cos(toRadians(90 - direction[slot]));
+
+        updateProgress(slot);
+        // Every checkpoint the car got to since the last tick, however fast it went
+        while (progress[slot] >= checkpointProgress(checkpointsPassed[slot])) {
+            int pos = nextCheckpoint[slot] + 1;
+            if (pos == checkpoints.length) {
+                pos = 0;
+                lapComplete[slot] = true;
+            }
+            nextCheckpoint[slot] = pos;
+            checkpointsPassed[slot]++;
+        }
+
+        score[slot] = bestProgress[slot] * 100 + checkpointsPassed[slot] * 500;
+        ticks[slot] = lifetime + 1;
+        odometer[slot] += speed;
+
+        if (STAGNATION_TICKS > 0 && (stagnates(slot, lifetime) || turnedBack(slot) || loops(slot, lifetime))) {
+            alive[slot] = false;
+        }
+    }
+
+    /**
+     * Looks up the progress in a lap at the new position. A jump of more than half a lap means the car crossed the
+     * start line, forwards when the progress in the lap dropped.
+     */
+    private void updateProgress(int slot) {
+        float inLap = progressField.at(x[slot], y[slot]);
+        if (inLap < 0) {
+            // Off the track, the collision check ends the car
+            return;
+        }
+        double progress = laps[slot] * lapLength + inLap;
+        double change = progress - this.progress[slot];
+        if (change < -lapLength / 2) {
+            laps[slot]++;
+            progress += lapLength;
+        }
+        else if (change > lapLength / 2) {
+            laps[slot]--;
+            progress -= lapLength;
+        }
+        this.progress[slot] = progress;
+        if (progress > bestProgress[slot]) {
+            bestProgress[slot] = progress;
+            progressTick[slot] = ticks[slot];
+        }
+    }
+
+    /**
+     * Progress at which a car has passed the given number of checkpoints.
+     */
+    private double checkpointProgress(int passed) {
+        return (passed / checkpoints.length) * lapLength + checkpoints[passed % checkpoints.length];
+    }
+
+    private boolean stagnates(int slot, int lifetime) {
+        return lifetime - progressTick[slot] > STAGNATION_TICKS;
+    }
+
+    private boolean turnedBack(int slot) {
+        int passed = checkpointsPassed[slot];
+        return passed > 0 && progress[slot] < checkpointProgress(passed - 1) - BACKWARDS_DISTANCE;
+    }
+
+    private boolean loops(int slot, int lifetime) {
+        if ((lifetime + 1) % LOOP_WINDOW_TICKS != 0) {
+            return false;
+        }
+        boolean loops = odometer[slot] > LOOP_DISTANCE
+                && Math.hypot(x[slot] - anchorX[slot], y[slot] - anchorY[slot]) < LOOP_RADIUS;
+        anchorX[slot] = x[slot];
+        anchorY[slot] = y[slot];
+        odometer[slot] = 0;
+        return loops;
+    }
+
+    void action(int slot, Accelerate accelerate, Turn turn) {
+        if (!alive[slot]) {
+            return;
+        }
+        double speed = this.speed[slot];
+        if (accelerate == Accelerate.ACCELERATE) {
+            speed = Math.min(MAX_SPEED, speed + MAX_ACCELERATION);
+        }
+        if (accelerate == Accelerate.DECELERATE) {
+            speed = Math.max(0, speed - MAX_DECELERATION);
+        }
+        this.speed[slot] = speed;
+        if (speed == 0) {
+            return;
+        }
+        double maxTurn;
+        if (speed < 0.3) {
+            maxTurn = 1;
+        }
+        else {
+            maxTurn = MAX_TURN;
+        }
+        double direction = this.direction[slot];
+        if (turn == Turn.LEFT) {
+            direction -= maxTurn;
+        }
+        if (turn == Turn.RIGHT) {
+            direction += maxTurn;
+        }
+        if (direction < 0) {
+            direction += 360;
+        }
+        if (direction > 360) {
+            direction -= 360;
+        }
+        this.direction[slot] = direction;
+    }
+
+    /**
+     * Checks the four corners of the car body against the mask and crashes the car when one is off the track.
+     */
+    boolean collides(int slot, DrivableMask mask) {
+        double radians = toRadians(direction[slot]);
+        double cos = cos(radians);
+        double sin = sin(radians);
+        double x = this.x[slot];
+        double y = this.y[slot];
+        if (!cornerDrivable(mask, x, y, cos, sin, 0, 0)
+                || !cornerDrivable(mask, x, y, cos, sin, CAR_LENGTH, 0)
+                || !cornerDrivable(mask, x, y, cos, sin, CAR_LENGTH, CAR_WIDTH)
+                || !cornerDrivable(mask, x, y, cos, sin, 0, CAR_WIDTH)) {
+            alive[slot] = false;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean cornerDrivable(DrivableMask mask, double x, double y, double cos, double sin, int along, int across) {
+        // The body is drawn 5 pixels off the car position, the same offset the sprite uses
+        double offset = across + 5;
+        return mask.isDrivable((int) (x + along * cos - offset * sin), (int) (y + along * sin + offset * cos));
+    }
+
+    /**
+     * Copies position, heading and state of the cars for drawing. With a positive top only that many cars with the
+     * highest score are copied, found with a min heap on score so the whole population is never sorted.
+     */
+    TrackSnapshot snapshot(int top) {
+        int[] slots;
+        int count;
+        if (top <= 0 || top >= size) {
+            count = size;
+            slots = null;
+        }
+        else {
+            count = top;
+            slots = topSlots(top);
+        }
+        float[] x = new float[count];
+        float[] y = new float[count];
+        float[] direction = new float[count];
+        boolean[] crashed = new boolean[count];
+        boolean[] best = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int slot = slots == null ? i : slots[i];
+            x[i] = (float)this.x[slot];
+            y[i] = (float)this.y[slot];
+            direction[i] = (float)this.direction[slot];
+            crashed[i] = !alive[slot];
+            best[i] = this.best[slot];
+        }
+        return new TrackSnapshot(count, aliveCount, x, y, direction, crashed, best);
+    }
+
+    private int[] topSlots(int top) {
+        int[] heap = new int[top];
+        for (int slot = 0; slot < size; slot++) {
+            if (slot < top) {
+                heap[slot] = slot;
+                siftUp(heap, slot);
+            }
+            else if (score[slot] > score[heap[0]]) {
+                heap[0] = slot;
+                siftDown(heap, top);
+            }
+        }
+        return heap;
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (score[heap[parent]] <= score[slot]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(int[] heap, int length) {
+        int slot = heap[0];
+        int index = 0;
+        int child;
+        while ((child = 2 * index + 1) < length) {
+            if (child + 1 < length && score[heap[child + 1]] < score[heap[child]]) {
+                child++;
+            }
+            if (score[slot] <= score[heap[child]]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = slot;
+    }
+
+    void receivedDistances(int slot, LinesOfSightDistances linesOfSightDistances) {
+        distanceRight[slot] = linesOfSightDistances.getDistanceRight();
+        distanceAhead[slot] = linesOfSightDistances.getDistanceAhead();
+        distanceLeft[slot] = linesOfSightDistances.getDistanceLeft();
+    }
+
+    LinesOfSight getLinesOfSight(int slot) {
+        return LinesOfSight.builder()
+                .x((int) x[slot])
+                .y((int) y[slot])
+                .direction((int) direction[slot])
+                .build();
+    }
+}
@@ -0,0 +1,111 @@
+package nl.pvanassen.raceai;
+
+/**
+ * Euclidean distance from every pixel of the track mask to the nearest non drivable pixel.
+ * Lets a line of sight skip ahead by the free distance instead of probing pixel by pixel.
+ */
+public class DistanceField {
+
+    private final int width;
+
+    private final int height;
+
+    private final float[] distances;
+
+    private DistanceField(int width, int height, float[] distances) {
+        this.width = width;
+        this.height = height;
+        this.distances = distances;
+    }
+
+    static DistanceField of(DrivableMask mask) {
+        int width = mask.getWidth();
+        int height = mask.getHeight();
+        // Further than anything on the mask, yet small enough to keep the float arithmetic exact
+        float far = (float) (width + height) * (width + height);
+        float[] squared = new float[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                squared[y * width + x] = mask.isDrivable(x, y) ? far : 0;
+            }
+        }
+        return new DistanceField(width, height, transform(width, height, squared));
+    }
+
+    /**
+     * Felzenszwalb and Huttenlocher: a 1D squared distance transform over the columns, then over the rows.
+     */
+    private static float[] transform(int width, int height, float[] squared) {
+        int max = Math.max(width, height);
+        float[] f = new float[max];
+        float[] d = new float[max];
+        int[] v = new int[max];
+        float[] z = new float[max + 1];
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                f[y] = squared[y * width + x];
+            }
+            transform1D(f, height, d, v, z);
+            for (int y = 0; y < height; y++) {
+                squared[y * width + x] = d[y];
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(squared, y * width, f, 0, width);
+            transform1D(f, width, d, v, z);
+            System.arraycopy(d, 0, squared, y * width, width);
+        }
+        for (int i = 0; i < squared.length; i++) {
+            squared[i] = (float)Math.sqrt(squared[i]);
+        }
+        return squared;
+    }
+
+    private static void transform1D(float[] f, int n, float[] d, int[] v, float[] z) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = -Float.MAX_VALUE;
+        z[1] = Float.MAX_VALUE;
+        for (int q = 1; q < n; q++) {
+            float s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2f * q - 2f * v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2f * q - 2f * v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Float.MAX_VALUE;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }
+            d[q] = (q - v[k]) * (q - v[k]) + f[v[k]];
+        }
+    }
+
+    /**
+     * Same result as probing every whole step along the ray: the first step landing on a non drivable pixel,
+     * or {@link Integer#MAX_VALUE} when the ray leaves the mask or gets longer than maxDistance.
+     */
+    int march(double startX, double startY, double directionX, double directionY, int maxDistance) {
+        int i = 0;
+        while (i < maxDistance) {
+            int x = (int) (startX + (directionX * i));
+            int y = (int) (startY + (directionY * i));
+            if (x < 0 || x >= width || y < 0 || y >= height) {
+                return Integer.MAX_VALUE;
+            }
+            float distance = distances[y * width + x];
+            if (distance == 0) {
+                return i;
+            }
+            // Truncating to a pixel can shift a sample by up to sqrt(2), stay clear of that
+            i += Math.max(1, (int) (distance - 1.5f));
+        }
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,184 @@
+package nl.pvanassen.raceai;
+
+import nl.pvanassen.raceai.ai.BatchEvaluator;
+import nl.pvanassen.raceai.ai.Population;
+import nl.pvanassen.raceai.ai.SelectionStrategy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the population and breeds it, while {@link DistributedWorker} processes drive the cars. Every generation is
+ * cut into batches that connected workers take from a shared queue. When a worker dies or times out mid-batch, the
+ * batch goes back to the front of the queue for another worker, so a generation only needs one worker to survive.
+ * When no worker is connected for a whole worker timeout, the generation fails instead of waiting forever.
+ *
+ * <p>Listens on localhost only. Port, batch size and worker timeout come from -Draceai.coordinatorPort,
+ * -Draceai.batchSize and -Draceai.workerTimeout (seconds).</p>
+ */
+public class DistributedCoordinator {
+
+    static final int DEFAULT_PORT = 7531;
+
+    private final BlockingDeque<Batch> pending = new LinkedBlockingDeque<>();
+
+    private final AtomicInteger workers = new AtomicInteger();
+
+    private final int timeoutMillis;
+
+    private int nextBatchId = 0;
+
+    private DistributedCoordinator(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    private static class Batch {
+        private final int id;
+
+        private final int from;
+
+        private final int count;
+
+        private final float[] genomes;
+
+        private final double[] scores;
+
+        private final CountDownLatch latch;
+
+        private boolean done = false;
+
+        private Batch(int id, int from, int count, float[] genomes, double[] scores, CountDownLatch latch) {
+            this.id = id;
+            this.from = from;
+            this.count = count;
+            this.genomes = genomes;
+            this.scores = scores;
+            this.latch = latch;
+        }
+
+        private synchronized void complete(double[] batchScores) {
+            if (done) {
+                return;
+            }
+            done = true;
+            System.arraycopy(batchScores, 0, scores, from, count);
+            latch.countDown();
+        }
+    }
+
+    private void listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        System.out.println("Coordinator listening on " + server.getLocalSocketAddress());
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket socket = server.accept();
+                    socket.setSoTimeout(timeoutMillis);
+                    socket.setTcpNoDelay(true);
+                    Thread worker = new Thread(() -> serve(socket), "worker-" + socket.getPort());
+                    worker.setDaemon(true);
+                    worker.start();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+        }, "coordinator-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void serve(Socket socket) {
+        System.out.println("Worker " + socket.getRemoteSocketAddress() + " connected, " + workers.incrementAndGet() + " workers");
+        Batch batch = null;
+        try (Socket closing = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                batch = pending.take();
+                BatchProtocol.writeBatch(out, batch.id, batch.genomes, batch.from, batch.count, BatchEvaluator.genomeLength());
+                batch.complete(BatchProtocol.readScores(in, batch.id, batch.count));
+                batch = null;
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Worker " + socket.getRemoteSocketAddress() + " lost: " + e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            // Whatever ended this worker, its batch must not get lost
+            if (batch != null) {
+                pending.addFirst(batch);
+                System.out.println("Batch " + batch.id + " of worker " + socket.getRemoteSocketAddress() + " requeued");
+            }
+            System.out.println("Worker " + socket.getRemoteSocketAddress() + " gone, " + workers.decrementAndGet() + " workers");
+        }
+    }
+
+    /**
+     * Has the workers score every genome and waits until all batches are back, or fails when no worker was connected
+     * for a whole worker timeout.
+     */
+    private double[] evaluate(float[] genomes, int size, int batchSize) throws InterruptedException {
+        double[] scores = new double[size];
+        int batches = (size + batchSize - 1) / batchSize;
+        CountDownLatch latch = new CountDownLatch(batches);
+        for (int from = 0; from < size; from += batchSize) {
+            pending.add(new Batch(nextBatchId++, from, Math.min(batchSize, size - from), genomes, scores, latch));
+        }
+        if (workers.get() == 0) {
+            System.out.println("Waiting for workers to connect");
+        }
+        while (!latch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            if (workers.get() == 0) {
+                pending.clear();
+                throw new IllegalStateException("No workers for " + timeoutMillis / 1000 + " s, " + latch.getCount()
+                        + " of " + batches + " batches not evaluated");
+            }
+        }
+        return scores;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        TrainingConfiguration configuration = TrainingConfiguration.fromSystemProperties();
+        int port = Integer.getInteger("raceai.coordinatorPort", DEFAULT_PORT);
+        int batchSize = Integer.getInteger("raceai.batchSize", 2000);
+        int timeoutMillis = Integer.getInteger("raceai.workerTimeout", 600) * 1000;
+        System.out.println("Coordinating " + configuration);
+
+        // The cars on this track never drive, they only carry the scores the workers send back
+        Population population = new Population(new Track(true), configuration.getPopulationSize(),
+                SelectionStrategy.of(configuration), configuration.getSeed());
+        DistributedCoordinator coordinator = new DistributedCoordinator(timeoutMillis);
+        coordinator.listen(port);
+
+        try {
+            for (int generation = 1; configuration.getGenerations() == 0 || generation <= configuration.getGenerations(); generation++) {
+                long start = System.nanoTime();
+                population.evaluated(coordinator.evaluate(population.genomes(), configuration.getPopulationSize(), batchSize));
+                System.out.println("Generation " + population.getGeneration() + " evaluated by " + coordinator.workers.get()
+                        + " workers in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                population.saveBest();
+                population.naturalSelection();
+            }
+        }
+        finally {
+            population.close();
+        }
+    }
+}
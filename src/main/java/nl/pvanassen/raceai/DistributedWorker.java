@@ -0,0 +1,49 @@
+package nl.pvanassen.raceai;
+
+import nl.pvanassen.raceai.ai.BatchEvaluator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Simulates batches of genomes for a {@link DistributedCoordinator} on a headless track of its own.
+ * Usage: DistributedWorker [host] [port]
+ */
+public class DistributedWorker {
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DistributedCoordinator.DEFAULT_PORT;
+
+        BatchEvaluator evaluator = new BatchEvaluator(new Track(true));
+        try (Socket socket = new Socket(host, port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            System.out.println("Connected to coordinator " + socket.getRemoteSocketAddress());
+            while (true) {
+                BatchProtocol.Batch batch;
+                try {
+                    batch = BatchProtocol.readBatch(in);
+                }
+                catch (EOFException e) {
+                    System.out.println("Coordinator closed the connection");
+                    return;
+                }
+                if (batch.genomeLength != BatchEvaluator.genomeLength()) {
+                    throw new IllegalStateException("Coordinator sends genomes of length " + batch.genomeLength
+                            + ", this worker drives " + BatchEvaluator.genomeLength());
+                }
+                long start = System.nanoTime();
+                double[] scores = evaluator.evaluate(batch.genomes, batch.count);
+                BatchProtocol.writeScores(out, batch.id, scores);
+                System.out.println("Batch " + batch.id + " of " + batch.count + " cars took " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        }
+    }
+}
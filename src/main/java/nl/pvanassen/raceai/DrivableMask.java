@@ -0,0 +1,65 @@
+package nl.pvanassen.raceai;
+
+import lombok.Getter;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The drivable (white) pixels of the track mask, one bit per pixel in row-major order.
+ * Anything outside the mask is not drivable.
+ */
+public class DrivableMask {
+
+    @Getter
+    private final int width;
+
+    @Getter
+    private final int height;
+
+    private final long[] bits;
+
+    private DrivableMask(int width, int height, long[] bits) {
+        this.width = width;
+        this.height = height;
+        this.bits = bits;
+    }
+
+    static DrivableMask of(BufferedImage mask) {
+        int width = mask.getWidth();
+        int height = mask.getHeight();
+        int white = Color.WHITE.getRGB();
+        int[] rgb = mask.getRGB(0, 0, width, height, null, 0, width);
+        long[] bits = new long[(rgb.length + 63) >>> 6];
+        for (int i = 0; i < rgb.length; i++) {
+            if (rgb[i] == white) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        return new DrivableMask(width, height, bits);
+    }
+
+    public boolean isDrivable(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return false;
+        }
+        int index = y * width + x;
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public long fingerprint() {
+        long hash = 1125899906842597L;
+        for (long word : bits) {
+            hash = 31 * hash + word;
+        }
+        return 31 * (31 * hash + width) + height;
+    }
+
+    public int countDrivable() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
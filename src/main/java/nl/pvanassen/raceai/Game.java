@@ -5,6 +5,7 @@ import java.awt.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 
 import static nl.pvanassen.raceai.Global.FPS;
 
@@ -14,17 +15,40 @@ public abstract class Game {
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
-    protected final JFrame trackFrame = new JFrame("Track");
+    protected final JFrame trackFrame;
 
-    protected final Track track = new Track();
+    protected final Track track;
 
     protected final Modus modus;
 
+    protected final boolean headless;
+
+    private volatile boolean running = true;
+
+    // Cars moved by the last track tick and how long that took, for throughput reports
+    protected int carsTicked;
+
+    protected long trackTickNanos;
+
     protected Game(Modus modus) {
+        this(modus, false);
+    }
+
+    protected Game(Modus modus, boolean headless) {
         this.modus = modus;
+        this.headless = headless;
+        this.trackFrame = headless ? null : new JFrame("Track");
+        this.track = new Track(headless);
     }
 
     protected void start() {
+        if (headless) {
+            // No frame and no scheduler, tick as fast as the CPU allows on the calling thread
+            while (running) {
+                tickInternal();
+            }
+            return;
+        }
         EventQueue.invokeLater(() -> {
             try {
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -38,6 +62,7 @@ public abstract class Game {
             trackFrame.pack();
             trackFrame.setLocationRelativeTo(null);
             trackFrame.setVisible(true);
+            track.startRendering();
 
             scheduler.scheduleAtFixedRate(this::tickInternal,
                     TICK_IN_NANOS,
@@ -46,12 +71,17 @@ public abstract class Game {
         });
     }
 
+    protected void stop() {
+        running = false;
+        scheduler.shutdown();
+    }
+
     private void tickInternal() {
         try {
-            track.tick();
+            long start = System.nanoTime();
+            carsTicked = track.tick(driver());
+            trackTickNanos = System.nanoTime() - start;
             tick();
-            track.paintNow(trackFrame.getGraphics());
-            // trackFrame.repaint();
         }
         catch (RuntimeException e) {
             e.printStackTrace();
@@ -60,4 +90,11 @@ public abstract class Game {
 
     protected abstract void tick();
 
+    /**
+     * Decides for a car in the same pass in which the track moves and senses it, see {@link Track#tick(IntConsumer)}.
+     */
+    protected IntConsumer driver() {
+        return null;
+    }
+
 }
@@ -0,0 +1,195 @@
+package nl.pvanassen.raceai;
+
+import lombok.SneakyThrows;
+import nl.pvanassen.raceai.ai.GenerationStatistics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Appends one row per generation to a columnar file, so thousands of generations can be scanned without parsing logs.
+ * Read it back with {@link GenerationHistoryReader}.
+ *
+ * <p>The file is a little endian header of {@value #HEADER_SIZE} bytes (magic, version, column count, rows per block,
+ * row count, the column names and the training configuration) followed by blocks of {@value #BLOCK_ROWS} rows. Inside
+ * a block every column is a run of doubles, so reading one column touches only its own pages. Rows are written
+ * through a memory mapping and the row count is updated last, so a run that is killed keeps every finished
+ * generation.</p>
+ */
+public class GenerationHistory implements AutoCloseable {
+
+    static final int MAGIC = 0x5247454E;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 4096;
+
+    static final int BLOCK_ROWS = 1024;
+
+    static final int ROWS_OFFSET = 16;
+
+    static final List<String> COLUMNS = List.of(
+            "generation", "timestamp", "ticks", "carTicks",
+            "generationMillis", "simulationMillis", "selectionMillis", "persistenceMillis",
+            "fitnessMin", "fitnessP10", "fitnessP25", "fitnessMedian", "fitnessP75", "fitnessP90", "fitnessMax", "fitnessMean",
+            "lifetimeMean", "lifetimeMax", "checkpointsMean", "checkpointsMax",
+            "mutationRate", "takeTop");
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer header;
+
+    private MappedByteBuffer block;
+
+    private long rows;
+
+    private final double[] row = new double[COLUMNS.size()];
+
+    /**
+     * Opens the history in the given file, continuing after its last row when it exists.
+     */
+    @SneakyThrows
+    GenerationHistory(Path file, String configuration) {
+        boolean exists = Files.exists(file) && Files.size(file) >= HEADER_SIZE;
+        channel = FileChannel.open(file, CREATE, READ, WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (exists) {
+            List<String> columns = readHeader(header, file).columns;
+            if (!columns.equals(COLUMNS)) {
+                throw new IllegalStateException("History " + file + " has columns " + columns + ", expected " + COLUMNS);
+            }
+            rows = header.getLong(ROWS_OFFSET);
+            System.out.println("Continuing generation history " + file + " after " + rows + " generations");
+        }
+        else {
+            writeHeader(configuration);
+        }
+    }
+
+    private void writeHeader(String configuration) {
+        header.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(COLUMNS.size())
+                .putInt(BLOCK_ROWS)
+                .putLong(0);
+        for (String column : COLUMNS) {
+            putString(column);
+        }
+        putString(configuration);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (header.remaining() < Integer.BYTES + bytes.length) {
+            throw new IllegalArgumentException("History header holds at most " + HEADER_SIZE + " bytes");
+        }
+        header.putInt(bytes.length).put(bytes);
+    }
+
+    void append(int generation, long ticks, long carTicks, long generationNanos, long simulationNanos, long selectionNanos,
+                long persistenceNanos, GenerationStatistics statistics, float mutationRate, int takeTop) {
+        int column = 0;
+        row[column++] = generation;
+        row[column++] = System.currentTimeMillis();
+        row[column++] = ticks;
+        row[column++] = carTicks;
+        row[column++] = generationNanos / 1_000_000d;
+        row[column++] = simulationNanos / 1_000_000d;
+        row[column++] = selectionNanos / 1_000_000d;
+        row[column++] = persistenceNanos / 1_000_000d;
+        row[column++] = statistics.getFitnessMin();
+        row[column++] = statistics.getFitnessP10();
+        row[column++] = statistics.getFitnessP25();
+        row[column++] = statistics.getFitnessMedian();
+        row[column++] = statistics.getFitnessP75();
+        row[column++] = statistics.getFitnessP90();
+        row[column++] = statistics.getFitnessMax();
+        row[column++] = statistics.getFitnessMean();
+        row[column++] = statistics.getLifetimeMean();
+        row[column++] = statistics.getLifetimeMax();
+        row[column++] = statistics.getCheckpointsMean();
+        row[column++] = statistics.getCheckpointsMax();
+        row[column++] = mutationRate;
+        row[column] = takeTop;
+        append(row);
+    }
+
+    @SneakyThrows
+    private void append(double[] row) {
+        int inBlock = (int)(rows % BLOCK_ROWS);
+        if (block == null || inBlock == 0) {
+            block = channel.map(FileChannel.MapMode.READ_WRITE, blockOffset(rows / BLOCK_ROWS, row.length), blockSize(row.length));
+            block.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        for (int column = 0; column < row.length; column++) {
+            block.putDouble((column * BLOCK_ROWS + inBlock) * Double.BYTES, row[column]);
+        }
+        rows++;
+        header.putLong(ROWS_OFFSET, rows);
+    }
+
+    @Override
+    @SneakyThrows
+    public void close() {
+        if (block != null) {
+            block.force();
+        }
+        header.force();
+        channel.close();
+    }
+
+    static long blockOffset(long block, int columns) {
+        return HEADER_SIZE + block * blockSize(columns);
+    }
+
+    static int blockSize(int columns) {
+        return columns * BLOCK_ROWS * Double.BYTES;
+    }
+
+    static Header readHeader(ByteBuffer buffer, Path file) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN).position(0);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalStateException(file + " is not a generation history");
+        }
+        int columnCount = buffer.getInt();
+        if (buffer.getInt() != BLOCK_ROWS) {
+            throw new IllegalStateException("History " + file + " uses another block size");
+        }
+        long rows = buffer.getLong();
+        List<String> columns = new ArrayList<>();
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(getString(buffer));
+        }
+        return new Header(columns, getString(buffer), rows);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static class Header {
+        final List<String> columns;
+
+        final String configuration;
+
+        final long rows;
+
+        private Header(List<String> columns, String configuration, long rows) {
+            this.columns = columns;
+            this.configuration = configuration;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package nl.pvanassen.raceai;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads a {@link GenerationHistory} through a read only memory mapping. As a program it prints the trend of a few
+ * columns: {@code GenerationHistoryReader <file> [column...]}.
+ */
+public class GenerationHistoryReader {
+
+    private static final List<String> DEFAULT_COLUMNS = List.of("fitnessMax", "fitnessMedian", "fitnessMean",
+            "lifetimeMean", "checkpointsMean", "mutationRate", "generationMillis");
+
+    private static final int MAX_LINES = 40;
+
+    @Getter
+    private final List<String> columns;
+
+    @Getter
+    private final String configuration;
+
+    private final int rows;
+
+    private final MappedByteBuffer data;
+
+    @SneakyThrows
+    public GenerationHistoryReader(Path file) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            GenerationHistory.Header header = GenerationHistory.readHeader(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, GenerationHistory.HEADER_SIZE), file);
+            columns = header.columns;
+            configuration = header.configuration;
+            rows = (int)header.rows;
+            long blocks = (rows + GenerationHistory.BLOCK_ROWS - 1) / GenerationHistory.BLOCK_ROWS;
+            long size = blocks * GenerationHistory.blockSize(columns.size());
+            // The mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, GenerationHistory.HEADER_SIZE, size);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * All values of one column, read block by block from its contiguous runs.
+     */
+    public double[] column(String name) {
+        int column = columns.indexOf(name);
+        if (column < 0) {
+            throw new IllegalArgumentException("No column " + name + ", the history has " + columns);
+        }
+        double[] values = new double[rows];
+        int blockSize = GenerationHistory.blockSize(columns.size());
+        for (int start = 0; start < rows; start += GenerationHistory.BLOCK_ROWS) {
+            int offset = (start / GenerationHistory.BLOCK_ROWS) * blockSize + column * GenerationHistory.BLOCK_ROWS * Double.BYTES;
+            int count = Math.min(GenerationHistory.BLOCK_ROWS, rows - start);
+            data.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(offset).asDoubleBuffer().get(values, start, count);
+        }
+        return values;
+    }
+
+    public double value(String name, int row) {
+        int column = columns.indexOf(name);
+        if (column < 0 || row < 0 || row >= rows) {
+            throw new IllegalArgumentException("No value of " + name + " in row " + row);
+        }
+        int block = row / GenerationHistory.BLOCK_ROWS;
+        return data.getDouble(block * GenerationHistory.blockSize(columns.size())
+                + (column * GenerationHistory.BLOCK_ROWS + row % GenerationHistory.BLOCK_ROWS) * Double.BYTES);
+    }
+
+    private void printTrends(List<String> names) {
+        System.out.println("Training with " + configuration);
+        System.out.println(rows + " generations");
+        if (rows == 0) {
+            return;
+        }
+        double[] generation = column("generation");
+        List<double[]> values = new ArrayList<>();
+        StringBuilder line = new StringBuilder(String.format("%10s", "generation"));
+        for (String name : names) {
+            values.add(column(name));
+            line.append(String.format(" %16s", name));
+        }
+        System.out.println(line);
+        int step = Math.max(1, (rows + MAX_LINES - 1) / MAX_LINES);
+        for (int row = 0; row < rows; row += step) {
+            printRow(generation, values, row);
+        }
+        if ((rows - 1) % step != 0) {
+            printRow(generation, values, rows - 1);
+        }
+        System.out.println();
+        for (int i = 0; i < names.size(); i++) {
+            double[] column = values.get(i);
+            int best = 0;
+            for (int row = 1; row < rows; row++) {
+                if (column[row] > column[best]) {
+                    best = row;
+                }
+            }
+            System.out.println(names.get(i) + ": " + format(column[0]) + " -> " + format(column[rows - 1])
+                    + ", highest " + format(column[best]) + " in generation " + (long)generation[best]);
+        }
+    }
+
+    private static void printRow(double[] generation, List<double[]> values, int row) {
+        StringBuilder line = new StringBuilder(String.format("%10d", (long)generation[row]));
+        for (double[] column : values) {
+            line.append(String.format(" %16s", format(column[row])));
+        }
+        System.out.println(line);
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long)value) : String.format("%.3f", value);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: GenerationHistoryReader <file> [column...]");
+            return;
+        }
+        GenerationHistoryReader reader = new GenerationHistoryReader(Paths.get(args[0]));
+        List<String> names = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : DEFAULT_COLUMNS;
+        reader.printTrends(names);
+    }
+}
@@ -17,4 +17,18 @@ public class Global {
 
     public static final int POPULATION_SIZE = 50000;
 
+    // Draw only this many cars with the highest score, 0 draws all of them
+    public static final int RENDER_TOP_CARS = Integer.getInteger("raceai.renderTopCars", 0);
+
+    // Number of saved best brains to keep on disk
+    public static final int BRAIN_RETENTION = Integer.getInteger("raceai.brainRetention", 100);
+
+    // Seconds between metrics log lines, 0 logs none
+    public static final int METRICS_LOG_INTERVAL = Integer.getInteger("raceai.metricsLogInterval", 30);
+
+    // Ticks a car may drive without getting further along the track, 0 keeps cars that stagnate, loop or turn back
+    public static final int STAGNATION_TICKS = Integer.getInteger("raceai.stagnationTicks", 4 * FPS);
+
+    public static final String LINE_OF_SIGHT_TABLE = System.getProperty("raceai.lineOfSightTable");
+
 }
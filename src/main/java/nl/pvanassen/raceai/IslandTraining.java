@@ -0,0 +1,51 @@
+package nl.pvanassen.raceai;
+
+import nl.pvanassen.raceai.ai.IslandModel;
+import nl.pvanassen.raceai.ai.Population;
+import nl.pvanassen.raceai.ai.SelectionStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless training with the island model. Every island gets its own track, its own share of the cores and the
+ * seed plus its index, so the islands share no workers and no random streams. Saved brains are named after their
+ * island, which keeps its share of the brain retention.
+ *
+ * <p>Checkpoints, reports and the generation history follow a single population and are not supported here.</p>
+ */
+public class IslandTraining {
+
+    private IslandTraining() {
+    }
+
+    static void train(TrainingConfiguration configuration) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        if (configuration.getCheckpoint() != null || configuration.getReport() != null || configuration.getHistory() != null) {
+            throw new IllegalArgumentException("Islands do not support raceai.checkpoint, raceai.report or raceai.history");
+        }
+        int islands = configuration.getIslands();
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / islands);
+        int brainRetention = Math.max(1, Global.BRAIN_RETENTION / islands);
+        System.out.println("Training " + islands + " islands of " + configuration.getPopulationSize() / islands
+                + " cars, " + parallelism + " workers each, with " + configuration);
+
+        List<Track> tracks = new ArrayList<>();
+        List<Population> populations = new ArrayList<>();
+        for (int island = 0; island < islands; island++) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            Track track = new Track(true, pool);
+            tracks.add(track);
+            // The first islands take the cars that do not divide evenly
+            int size = configuration.getPopulationSize() / islands + (island < configuration.getPopulationSize() % islands ? 1 : 0);
+            populations.add(new Population(track, size, SelectionStrategy.of(configuration), configuration.getSeed() + island,
+                    pool, "island-" + island, brainRetention));
+        }
+        new IslandModel(tracks, populations, configuration).train();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        train(TrainingConfiguration.fromSystemProperties());
+    }
+}
@@ -0,0 +1,301 @@
+package nl.pvanassen.raceai;
+
+import lombok.SneakyThrows;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Every line of sight result for the track, stored as a memory mapped file so it survives restarts and is shared by
+ * all training processes on the machine. Only pixels reachable from the start location are stored, as three unsigned
+ * shorts for each of the 361 integer directions a car can have. A distance is stored plus one, so an entry of zeros is
+ * not calculated yet and a new table is an empty file that needs no filling.
+ *
+ * <p>A table is filled lazily while training, or up front by running this class, which also finishes a table that was
+ * partly filled. Only a complete table is mapped read only; any other table is mapped read-write and keeps filling.
+ * A new table is written next to the file and linked into place, so no process ever sees a table without its
+ * header.</p>
+ */
+public class LineOfSightTable {
+
+    private static final int MAGIC = 0x4C4F5354;
+
+    private static final int VERSION = 3;
+
+    private static final int HEADER_SIZE = 40;
+
+    // Set once every entry is calculated
+    private static final int COMPLETE_OFFSET = 32;
+
+    private static final int DIRECTIONS = 361;
+
+    private static final int ENTRY_SIZE = 3 * Short.BYTES;
+
+    private static final char NOT_CALCULATED = 0;
+
+    private static final char NO_WALL = 0xFFFF;
+
+    private final int width;
+
+    private final int height;
+
+    private final int[] cellIndex;
+
+    private final MappedByteBuffer table;
+
+    private final boolean readOnly;
+
+    private final LinesOfSightCalculator calculator;
+
+    private LineOfSightTable(int width, int height, int[] cellIndex, MappedByteBuffer table, boolean readOnly,
+                             LinesOfSightCalculator calculator) {
+        this.width = width;
+        this.height = height;
+        this.cellIndex = cellIndex;
+        this.table = table;
+        this.readOnly = readOnly;
+        this.calculator = calculator;
+    }
+
+    @SneakyThrows
+    static LineOfSightTable open(Path file, DrivableMask mask, Point start, LinesOfSightCalculator calculator) {
+        int[] cellIndex = new int[mask.getWidth() * mask.getHeight()];
+        int cells = indexCells(mask, start, cellIndex);
+        long size = HEADER_SIZE + (long) cells * DIRECTIONS * ENTRY_SIZE;
+
+        if (!Files.exists(file)) {
+            create(file, mask, cells, size);
+        }
+        ByteBuffer header = readHeader(file, size);
+        verifyHeader(file, header, mask, cells);
+        boolean complete = header.getInt(COMPLETE_OFFSET) != 0;
+        try (FileChannel channel = complete ? FileChannel.open(file, READ) : FileChannel.open(file, READ, WRITE)) {
+            MappedByteBuffer table = channel.map(complete ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, size);
+            System.out.println("Line of sight table " + file + " mapped " + (complete ? "read only" : "for lazy filling") + ", " + cells + " cells");
+            return new LineOfSightTable(mask.getWidth(), mask.getHeight(), cellIndex, table, complete, calculator);
+        }
+    }
+
+    /**
+     * Writes an empty table with its header to a temporary file and links it to the table file. When another process
+     * created the table first, the link fails and its table is used instead.
+     */
+    @SneakyThrows
+    private static void create(Path file, DrivableMask mask, int cells, long size) {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                writeHeader(header, mask, cells);
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                // The entries stay a hole in the file, zeros are not calculated
+                channel.write(ByteBuffer.allocate(1), size - 1);
+                channel.force(false);
+            }
+            Files.createLink(file, temp);
+        }
+        catch (FileAlreadyExistsException e) {
+            System.out.println("Line of sight table " + file + " was created by another process");
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads the header of an existing table, failing on a file of the wrong length before anything is mapped.
+     */
+    @SneakyThrows
+    private static ByteBuffer readHeader(Path file, long size) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (channel.size() != size) {
+                throw new IllegalStateException("Line of sight table " + file + " does not belong to this track, it holds "
+                        + channel.size() + " bytes instead of " + size);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                channel.read(header, header.position());
+            }
+            return header;
+        }
+    }
+
+    private static boolean isComplete(Path file) {
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            try (FileChannel channel = FileChannel.open(file, READ)) {
+                while (header.hasRemaining() && channel.read(header) > 0) {
+                    // Read the whole header
+                }
+            }
+            return !header.hasRemaining() && header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && header.getInt(COMPLETE_OFFSET) != 0;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the distances for the given line of sight, or null when its position is not part of the table or its
+     * entry is missing from a table that cannot be written.
+     */
+    LinesOfSightDistances get(LinesOfSight linesOfSight) {
+        int x = linesOfSight.getX();
+        int y = linesOfSight.getY();
+        int direction = linesOfSight.getDirection();
+        if (x < 0 || y < 0 || x >= width || y >= height || direction < 0 || direction >= DIRECTIONS) {
+            return null;
+        }
+        int cell = cellIndex[y * width + x];
+        if (cell < 0) {
+            return null;
+        }
+        int offset = offset(cell, direction);
+        char right = table.getChar(offset);
+        char ahead = table.getChar(offset + Short.BYTES);
+        char left = table.getChar(offset + 2 * Short.BYTES);
+        if (right != NOT_CALCULATED && ahead != NOT_CALCULATED && left != NOT_CALCULATED) {
+            return LinesOfSightDistances.builder()
+                    .distanceRight(decode(right))
+                    .distanceAhead(decode(ahead))
+                    .distanceLeft(decode(left))
+                    .build();
+        }
+        if (readOnly) {
+            return null;
+        }
+        LinesOfSightDistances distances = calculator.calculate(linesOfSight);
+        put(table, offset, distances);
+        return distances;
+    }
+
+    private static int offset(int cell, int direction) {
+        return HEADER_SIZE + (cell * DIRECTIONS + direction) * ENTRY_SIZE;
+    }
+
+    private static void put(ByteBuffer table, int offset, LinesOfSightDistances distances) {
+        table.putChar(offset, encode(distances.getDistanceRight()));
+        table.putChar(offset + Short.BYTES, encode(distances.getDistanceAhead()));
+        table.putChar(offset + 2 * Short.BYTES, encode(distances.getDistanceLeft()));
+    }
+
+    private static char encode(double distance) {
+        return distance >= LinesOfSightCalculator.MAX_DISTANCE ? NO_WALL : (char) (distance + 1);
+    }
+
+    private static double decode(char distance) {
+        return distance == NO_WALL ? Integer.MAX_VALUE : distance - 1;
+    }
+
+    /**
+     * Flood fills the drivable pixels around the start location, numbering them in row-major order.
+     */
+    private static int indexCells(DrivableMask mask, Point start, int[] cellIndex) {
+        int width = mask.getWidth();
+        int height = mask.getHeight();
+        boolean[] reachable = new boolean[cellIndex.length];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        reachable[start.y * width + start.x] = true;
+        queue.add(start.y * width + start.x);
+        while (!queue.isEmpty()) {
+            int pixel = queue.poll();
+            int x = pixel % width;
+            int y = pixel / width;
+            visit(mask, reachable, queue, x - 1, y);
+            visit(mask, reachable, queue, x + 1, y);
+            visit(mask, reachable, queue, x, y - 1);
+            visit(mask, reachable, queue, x, y + 1);
+        }
+        int cells = 0;
+        for (int i = 0; i < cellIndex.length; i++) {
+            cellIndex[i] = reachable[i] ? cells++ : -1;
+        }
+        return cells;
+    }
+
+    private static void visit(DrivableMask mask, boolean[] reachable, ArrayDeque<Integer> queue, int x, int y) {
+        if (!mask.isDrivable(x, y)) {
+            return;
+        }
+        int pixel = y * mask.getWidth() + x;
+        if (!reachable[pixel]) {
+            reachable[pixel] = true;
+            queue.add(pixel);
+        }
+    }
+
+    private static void writeHeader(ByteBuffer header, DrivableMask mask, int cells) {
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, mask.getWidth());
+        header.putInt(12, mask.getHeight());
+        header.putInt(16, DIRECTIONS);
+        header.putInt(20, cells);
+        header.putLong(24, mask.fingerprint());
+        header.putInt(COMPLETE_OFFSET, 0);
+    }
+
+    private static void verifyHeader(Path file, ByteBuffer header, DrivableMask mask, int cells) {
+        if (header.getInt(0) != MAGIC
+                || header.getInt(4) != VERSION
+                || header.getInt(8) != mask.getWidth()
+                || header.getInt(12) != mask.getHeight()
+                || header.getInt(16) != DIRECTIONS
+                || header.getInt(20) != cells
+                || header.getLong(24) != mask.fingerprint()) {
+            throw new IllegalStateException("Line of sight table " + file + " does not belong to this track");
+        }
+    }
+
+    @SneakyThrows
+    private void precompute() {
+        int cells = table.getInt(20);
+        AtomicInteger done = new AtomicInteger();
+        Global.POOL.submit(() -> IntStream.range(0, cellIndex.length)
+                .parallel()
+                .filter(pixel -> cellIndex[pixel] >= 0)
+                .forEach(pixel -> {
+                    for (int direction = 0; direction < DIRECTIONS; direction++) {
+                        get(LinesOfSight.builder()
+                                .x(pixel % width)
+                                .y(pixel / width)
+                                .direction(direction)
+                                .build());
+                    }
+                    if (done.incrementAndGet() % 10_000 == 0) {
+                        System.out.println("Precomputed " + done.get() + " of " + cells + " cells");
+                    }
+                })).get();
+        table.force();
+        table.putInt(COMPLETE_OFFSET, 1);
+        table.force();
+    }
+
+    public static void main(String[] args) {
+        Path file = Paths.get(args.length > 0 ? args[0] : "track1-lines-of-sight.bin");
+        if (Files.exists(file) && isComplete(file)) {
+            System.out.println(file + " is already complete");
+            return;
+        }
+        System.setProperty("java.awt.headless", "true");
+        Track track = new Track(true);
+        LineOfSightTable table = open(file, track.getDrivableMask(), Track.START_LOCATION, track.getLinesOfSightCalculator());
+        table.precompute();
+        System.out.println("Wrote " + file);
+    }
+}
@@ -0,0 +1,43 @@
+package nl.pvanassen.raceai;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+
+import static java.lang.Math.*;
+
+/**
+ * The three sensor rays of a car, sphere traced over the distance field of the mask.
+ */
+class LinesOfSightCalculator {
+
+    static final int MAX_DISTANCE = 1000;
+
+    private final DistanceField distanceField;
+
+    LinesOfSightCalculator(DistanceField distanceField) {
+        this.distanceField = distanceField;
+    }
+
+    LinesOfSightDistances calculate(LinesOfSight linesOfSight) {
+        double x = linesOfSight.getX();
+        double y = linesOfSight.getY();
+        double direction = linesOfSight.getDirection();
+        AffineTransform at = new AffineTransform();
+        at.translate(x, y);
+        at.rotate(toRadians(direction));
+        at.translate(10, 10);
+        Point2D pt1 = at.transform(new Point2D.Double(0, 0), null);
+        double startX = pt1.getX();
+        double startY = pt1.getY();
+
+        return LinesOfSightDistances.builder()
+                .distanceAhead(trace(startX, startY, direction))
+                .distanceLeft(trace(startX, startY, direction + 45))
+                .distanceRight(trace(startX, startY, direction - 45))
+                .build();
+    }
+
+    private int trace(double startX, double startY, double direction) {
+        return distanceField.march(startX, startY, cos(toRadians(direction)), sin(toRadians(direction)), MAX_DISTANCE);
+    }
+}
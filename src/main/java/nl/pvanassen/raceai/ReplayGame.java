@@ -4,10 +4,7 @@ import lombok.SneakyThrows;
 import nl.pvanassen.raceai.ai.CarAI;
 
 import java.awt.*;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.util.stream.Collectors;
+import java.nio.file.Paths;
 
 public class ReplayGame extends Game {
 
@@ -18,9 +15,7 @@ public class ReplayGame extends Game {
     @SneakyThrows
     private ReplayGame(String file) {
         super(Modus.TRAINING);
-        try (BufferedReader reader = new BufferedReader(new FileReader(new File(file)))) {
-            carAI = new CarAI(track::createCar, "replay", reader.lines().collect(Collectors.joining()));
-        }
+        carAI = new CarAI(track::createCar, "replay", Paths.get(file));
 
         EventQueue.invokeLater(() -> {
             if (Global.DEBUG) {
@@ -46,7 +41,7 @@ public class ReplayGame extends Game {
     }
 
     public static void main(String[] args) {
-        new ReplayGame("deze-kan-een-rondje.json");
+        new ReplayGame(args.length > 0 ? args[0] : "deze-kan-een-rondje.json");
     }
 
 }
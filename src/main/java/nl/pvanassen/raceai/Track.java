@@ -2,41 +2,64 @@ package nl.pvanassen.raceai;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.google.common.collect.Lists;
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
+import nl.pvanassen.raceai.metrics.Metrics;
+import nl.pvanassen.raceai.metrics.SensorCacheMissBurstEvent;
+import nl.pvanassen.raceai.metrics.TickEvent;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
-import java.util.LinkedList;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.concurrent.ForkJoinTask;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
 
-import static java.lang.Math.*;
 import static lombok.AccessLevel.PRIVATE;
 import static nl.pvanassen.raceai.ImageHelper.loadImage;
 
 public class Track extends JPanel {
 
-    private static final Point START_LOCATION = new Point(440, 390);
+    static final Point START_LOCATION = new Point(440, 390);
+
+    // Below this many cars a tick task stops splitting, the fork would cost more than it saves
+    private static final int MIN_CARS_PER_TASK = 16;
+
+    // A tick in which at least this many sensor results, and at least a tenth of the cars, missed the cache
+    private static final int MIN_MISS_BURST = 64;
 
     private final BufferedImage track = loadImage("track1.png");
 
+    private final ForkJoinPool pool;
+
     private final BufferedImage mask = loadImage("track1-mask.png");
 
-//    private final List<Point> collisionSet = new LinkedList<>();
+    private final DrivableMask drivableMask = DrivableMask.of(mask);
 
-    private final List<Car> cars = new LinkedList<>();
+    private final LinesOfSightCalculator linesOfSightCalculator = new LinesOfSightCalculator(DistanceField.of(drivableMask));
+
+    private final LineOfSightTable lineOfSightTable;
+
+    // Sensor results traced because the cache did not have them, since the last tick
+    private final LongAdder sensorMisses = new LongAdder();
+
+    // Live cars last added to the process wide gauge
+    private int reportedLiveCars;
+
+//    private final List<Point> collisionSet = new LinkedList<>();
 
     private static final Cache<LinesOfSight, LinesOfSightDistances> CACHE = Caffeine.newBuilder()
             .maximumSize(1_000_000)
             .recordStats()
             .build();
 
+    static {
+        Metrics.sensorCacheHitRatio(() -> CACHE.stats().hitRate());
+    }
+
     private final List<Line2D> checkpoints = List.of(
             new Line2D.Float(300, 360, 300, 410),
             new Line2D.Float(30, 300, 80, 300),
@@ -47,12 +70,29 @@ public class Track extends JPanel {
             new Line2D.Float(600, 180, 575, 225),
             new Line2D.Float(600, 270, 575, 320));
 
-    private final BufferedImage buffer;
+    private final CarStates states = new CarStates(START_LOCATION, checkpoints, drivableMask, 1024);
+
+    // Not set when running headless
+    private final TrackRenderer renderer;
 
     Track() {
+        this(false);
+    }
+
+    Track(boolean headless) {
+        this(headless, Global.POOL);
+    }
+
+    /**
+     * A track that ticks its cars in the given pool, so several tracks can train side by side without sharing workers.
+     */
+    Track(boolean headless, ForkJoinPool pool) {
+        this.pool = pool;
         setPreferredSize(new Dimension(mask.getWidth(), mask.getHeight()));
         setDoubleBuffered(true);
-        buffer = new BufferedImage(mask.getWidth(), mask.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        renderer = headless ? null : new TrackRenderer(this, track, checkpoints);
+        lineOfSightTable = Global.LINE_OF_SIGHT_TABLE == null ? null :
+                LineOfSightTable.open(Paths.get(Global.LINE_OF_SIGHT_TABLE), drivableMask, START_LOCATION, linesOfSightCalculator);
 
 //        for (int x = 0; x != mask.getWidth(); x++) {
 //            for (int y = 0; y != mask.getHeight(); y++) {
@@ -65,70 +105,140 @@ public class Track extends JPanel {
 
     }
 
+    public boolean isDrivable(int x, int y) {
+        return drivableMask.isDrivable(x, y);
+    }
+
+    public DrivableMask getDrivableMask() {
+        return drivableMask;
+    }
+
+    public CarStates getCarStates() {
+        return states;
+    }
+
+    LinesOfSightCalculator getLinesOfSightCalculator() {
+        return linesOfSightCalculator;
+    }
+
     public synchronized Car createCar(CarType id) {
-        Car car = new Car(id, START_LOCATION, checkpoints);
-        cars.add(car);
-        return car;
+        return new Car(id, states, states.add(id.isBest()));
     }
 
-    @SneakyThrows
     public void tick() {
-        Graphics2D graphics2D = (Graphics2D)buffer.getGraphics();
-        Dimension size = getSize();
-        graphics2D.drawImage(track, 0, 0,size.width, size.height,0, 0, track.getWidth(), track.getHeight(), null);
-        if (Global.DEBUG) {
-            graphics2D.setColor(Color.BLUE);
-            checkpoints.forEach(graphics2D::draw);
-            for (int i = 0; i < checkpoints.size(); i++) {
-                Point2D pt1 = checkpoints.get(i).getP1();
-                graphics2D.drawString("Checkpoint " + i, (int)pt1.getX(), (int)pt1.getY());
-            }
+        tick(null);
+    }
+
+    /**
+     * Moves, collides and senses every car that is still driving, and then lets the driver act on what the car sees,
+     * all in one pass over the alive slots. The driver gets the slot of the car and may be null.
+     * Returns the number of cars that were ticked.
+     */
+    public int tick(IntConsumer driver) {
+        TickEvent event = new TickEvent();
+        event.begin();
+        long start = System.nanoTime();
+        states.updateAliveSlots();
+        int alive = states.getAliveCount();
+        if (alive > 0) {
+            int threshold = Math.max(MIN_CARS_PER_TASK, alive / (pool.getParallelism() * 4));
+            pool.invoke(new TickAction(drivableMask, linesOfSightCalculator, lineOfSightTable, states, sensorMisses,
+                    driver, threshold, 0, alive));
+        }
+        states.updateAliveSlots();
+        Metrics.liveCarsChanged(states.getAliveCount() - reportedLiveCars);
+        reportedLiveCars = states.getAliveCount();
+        Metrics.TICK.record(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.carsTicked = alive;
+            event.liveCars = states.getAliveCount();
+            event.commit();
         }
+        missBurst(alive);
 
-        int partitionSize = (int)Math.ceil(cars.size() / (float)Runtime.getRuntime().availableProcessors());
-        List<ForkJoinTask<?>> tasks = Lists.partition(cars, partitionSize)
-                .stream()
-                .map(CollisionTask.create(mask, buffer))
-                .map(Global.POOL::submit)
-                .collect(Collectors.toList());
+        if (renderer != null && renderer.wantsSnapshot()) {
+            renderer.publish(states.snapshot(Global.RENDER_TOP_CARS));
+        }
+        return alive;
+    }
 
-        for (ForkJoinTask<?> task : tasks) {
-            task.join();
+    private void missBurst(int sensed) {
+        int misses = (int)sensorMisses.sumThenReset();
+        if (misses < MIN_MISS_BURST || misses * 10 < sensed) {
+            return;
+        }
+        SensorCacheMissBurstEvent event = new SensorCacheMissBurstEvent();
+        if (event.isEnabled()) {
+            event.misses = misses;
+            event.carsSensed = sensed;
+            event.commit();
         }
+    }
 
+    void startRendering() {
+        renderer.start();
     }
 
+    /**
+     * Halves its range of alive slots until it is small enough to run, so idle workers can steal the other halves.
+     */
     @RequiredArgsConstructor(access = PRIVATE)
-    private static class CollisionTask implements Runnable {
-        private final BufferedImage mask;
+    private static class TickAction extends RecursiveAction {
+        private final DrivableMask mask;
 
-        private final BufferedImage buffer;
+        private final LinesOfSightCalculator linesOfSightCalculator;
 
-        private final List<Car> cars;
+        private final LineOfSightTable lineOfSightTable;
 
-        static Function<List<Car>, CollisionTask> create(
-                BufferedImage mask, BufferedImage buffer) {
-            return cars -> new CollisionTask(mask, buffer, cars);
-        }
+        private final CarStates states;
+
+        private final LongAdder sensorMisses;
+
+        private final IntConsumer driver;
+
+        private final int threshold;
+
+        // Range in the alive slots, not in all slots
+        private final int from;
+
+        private final int to;
 
         @Override
-        public void run() {
+        protected void compute() {
+            if (to - from > threshold) {
+                int mid = (from + to) >>> 1;
+                invokeAll(split(from, mid), split(mid, to));
+                return;
+            }
             try {
-                for (Car car : cars) {
-                    car.tick(buffer);
+                for (int i = from; i < to; i++) {
+                    int slot = states.aliveSlot(i);
+                    states.tick(slot);
 
-                    if (car.isCrashed()) {
+                    if (!states.alive[slot]) {
                         continue;
                     }
+                    boolean sampled = Metrics.sampled(slot);
+                    long start = sampled ? System.nanoTime() : 0;
 
                     // Collision detection
-                    if (doCollisionDetection(car)) {
+                    boolean collides = doCollisionDetection(slot);
+                    long collided = sampled ? System.nanoTime() : 0;
+                    if (sampled) {
+                        Metrics.COLLISION.record(collided - start);
+                    }
+                    if (collides) {
                         continue;
                     }
 
-                    LinesOfSightWithCallback linesOfSightWithCallback = car.getLinesOfSight();
-                    LinesOfSightDistances linesOfSightDistances = CACHE.get(linesOfSightWithCallback.getLinesOfSight(), this::calculateDistancesAlt1);
-                    linesOfSightWithCallback.getLinesOfSightDistances().accept(linesOfSightDistances);
+                    states.receivedDistances(slot, sense(states.getLinesOfSight(slot)));
+                    if (sampled) {
+                        Metrics.SENSING.record(System.nanoTime() - collided);
+                    }
+                    if (driver != null) {
+                        driver.accept(slot);
+                    }
                 }
             }
             catch (RuntimeException e) {
@@ -136,97 +246,45 @@ public class Track extends JPanel {
             }
         }
 
-        private boolean doCollisionDetection(Car car) {
-            AffineTransform affineTransform = new AffineTransform();
-            Shape shape = car.getShape();
-            double[] points = new double[2];
-            PathIterator pathIterator = ((Path2D.Double)shape).getPathIterator(affineTransform);
-            while (!pathIterator.isDone()) {
-                pathIterator.currentSegment(points);
-                if (mask.getRGB((int)points[0], (int)points[1]) != Color.WHITE.getRGB()) {
-                    car.crashed();
-                    return true;
-                }
-                pathIterator.next();
-            }
-            return false;
+        private TickAction split(int from, int to) {
+            return new TickAction(mask, linesOfSightCalculator, lineOfSightTable, states, sensorMisses, driver, threshold, from, to);
         }
 
-        private LinesOfSightDistances calculateDistancesAlt1(LinesOfSight linesOfSight) {
-            double x = linesOfSight.getX();
-            double y = linesOfSight.getY();
-            double direction = linesOfSight.getDirection();
-            AffineTransform at = new AffineTransform();
-            at.translate(x, y);
-            at.rotate(toRadians(direction));
-            at.translate(10, 10);
-            Point2D pt1 = at.transform(new Point2D.Double(0, 0), null);
-            double startX = pt1.getX();
-            double startY = pt1.getY();
-
-            double directionXAhead = cos(toRadians(direction));
-            double directionYAhead = sin(toRadians(direction));
-
-            double directionXLeft = cos(toRadians(direction + 45));
-            double directionYLeft = sin(toRadians(direction + 45));
-
-            double directionXRight = cos(toRadians(direction - 45));
-            double directionYRight = sin(toRadians(direction - 45));
-
-            int distanceLeft = Integer.MAX_VALUE;
-            int distanceAhead = Integer.MAX_VALUE;
-            int distanceRight = Integer.MAX_VALUE;
-
-            for (int i=0; i!= 1000; i++) {
-                if (distanceLeft == Integer.MAX_VALUE) {
-                    distanceLeft = getDistance(startX, startY, directionXLeft, directionYLeft, i);
-                }
-                if (distanceAhead == Integer.MAX_VALUE) {
-                    distanceAhead = getDistance(startX, startY, directionXAhead, directionYAhead, i);
-                }
-                if (distanceRight == Integer.MAX_VALUE) {
-                    distanceRight = getDistance(startX, startY, directionXRight, directionYRight, i);
-                }
-            }
-            return LinesOfSightDistances.builder()
-                    .distanceAhead(distanceAhead)
-                    .distanceLeft(distanceLeft)
-                    .distanceRight(distanceRight)
-                    .build();
+        private boolean doCollisionDetection(int slot) {
+            return states.collides(slot, mask);
         }
 
-        private int getDistance(double startX, double startY, double directionX, double directionY, int i) {
-            int endX = (int) (startX + (directionX * i));
-            int endY = (int) (startY + (directionY * i));
-
-            if ((endX < 0 || endX > mask.getWidth()) || (endY < 0 || endY > mask.getHeight())) {
-                System.out.println("StartX: " + startX + ", startY: " + startY + ", directionX: " + directionX + ", directionY: " + directionY + ", i: " + i);
-                return Integer.MAX_VALUE;
+        private LinesOfSightDistances sense(LinesOfSight linesOfSight) {
+            LinesOfSightDistances linesOfSightDistances = null;
+            if (lineOfSightTable != null) {
+                linesOfSightDistances = lineOfSightTable.get(linesOfSight);
             }
-
-            if (mask.getRGB(endX, endY) != Color.WHITE.getRGB()) {
-                if (Global.DEBUG) {
-                    buffer.setRGB(endX, endY, Color.RED.getRGB());
-                }
-                return i;
+            if (linesOfSightDistances == null) {
+                linesOfSightDistances = CACHE.get(linesOfSight, this::trace);
             }
+            return linesOfSightDistances;
+        }
 
-            if (Global.DEBUG) {
-                buffer.setRGB(endX, endY, Color.GREEN.getRGB());
-            }
-            return Integer.MAX_VALUE;
+        private LinesOfSightDistances trace(LinesOfSight linesOfSight) {
+            sensorMisses.increment();
+            return linesOfSightCalculator.calculate(linesOfSight);
         }
     }
 
-    void paintNow(Graphics g) {
-        g.drawImage(buffer, 0, 0, buffer.getWidth(), buffer.getHeight(), null);
-        Graphics2D graphics = (Graphics2D) buffer.getGraphics();
-        graphics.setBackground(new Color(0, 0, 0, 0));
-        graphics.clearRect(0,0, buffer.getWidth(), buffer.getHeight());
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (renderer != null) {
+            renderer.paint(g);
+        }
     }
 
-    public void clear() {
+    public void logCacheStats() {
         System.out.println("Cache stats: " + CACHE.stats());
-        cars.clear();
+    }
+
+    public void clear() {
+        logCacheStats();
+        states.clear();
     }
 }
@@ -0,0 +1,152 @@
+package nl.pvanassen.raceai;
+
+import nl.pvanassen.raceai.metrics.Metrics;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.Math.toRadians;
+import static nl.pvanassen.raceai.Global.FPS;
+import static nl.pvanassen.raceai.ImageHelper.loadImage;
+
+/**
+ * Draws the latest {@link TrackSnapshot} on its own thread at display rate. The simulation only hands over a new
+ * snapshot when the previous one was taken, so it never waits for Java2D.
+ */
+class TrackRenderer implements Runnable {
+
+    private static final long FRAME_IN_NANOS = 1_000_000_000L / FPS;
+
+    private static final BufferedImage CAR = loadImage("car.png");
+
+    private static final BufferedImage CRASHED = loadImage("crashed.png");
+
+    private static final BufferedImage BEST = loadImage("winner.png");
+
+    private final JComponent panel;
+
+    private final BufferedImage track;
+
+    private final List<Line2D> checkpoints;
+
+    private final AtomicReference<TrackSnapshot> latest = new AtomicReference<>();
+
+    private volatile boolean wantsSnapshot = true;
+
+    // The frame being shown, only swapped while holding the lock
+    private BufferedImage front;
+
+    private BufferedImage back;
+
+    TrackRenderer(JComponent panel, BufferedImage track, List<Line2D> checkpoints) {
+        this.panel = panel;
+        this.track = track;
+        this.checkpoints = checkpoints;
+        this.front = new BufferedImage(track.getWidth(), track.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        this.back = new BufferedImage(track.getWidth(), track.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    }
+
+    void start() {
+        Thread thread = new Thread(this, "track-renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    boolean wantsSnapshot() {
+        return wantsSnapshot;
+    }
+
+    void publish(TrackSnapshot snapshot) {
+        wantsSnapshot = false;
+        latest.set(snapshot);
+    }
+
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            TrackSnapshot snapshot = latest.getAndSet(null);
+            if (snapshot != null) {
+                // Let the simulation take the next one while this one is drawn
+                wantsSnapshot = true;
+                try {
+                    draw(snapshot);
+                    panel.repaint();
+                }
+                catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            next += FRAME_IN_NANOS;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+            else {
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    private void draw(TrackSnapshot snapshot) {
+        long start = System.nanoTime();
+        Graphics2D graphics = back.createGraphics();
+        try {
+            graphics.drawImage(track, 0, 0, null);
+            if (Global.DEBUG) {
+                graphics.setColor(Color.BLUE);
+                checkpoints.forEach(graphics::draw);
+                for (int i = 0; i < checkpoints.size(); i++) {
+                    Point2D pt1 = checkpoints.get(i).getP1();
+                    graphics.drawString("Checkpoint " + i, (int)pt1.getX(), (int)pt1.getY());
+                }
+            }
+            for (int car = 0; car < snapshot.getSize(); car++) {
+                drawCar(graphics, snapshot, car);
+            }
+        }
+        finally {
+            graphics.dispose();
+        }
+        synchronized (this) {
+            BufferedImage shown = front;
+            front = back;
+            back = shown;
+        }
+        Metrics.RENDERING.record(System.nanoTime() - start);
+    }
+
+    private static void drawCar(Graphics2D graphics, TrackSnapshot snapshot, int car) {
+        BufferedImage image;
+        if (snapshot.isCrashed(car)) {
+            image = CRASHED;
+        }
+        else if (snapshot.isBest(car)) {
+            image = BEST;
+        }
+        else {
+            image = CAR;
+        }
+        AffineTransform at = new AffineTransform();
+        at.translate(snapshot.getX(car), snapshot.getY(car));
+        at.rotate(toRadians(snapshot.getDirection(car)));
+        graphics.drawImage(image, at, null);
+
+        if (Global.DEBUG) {
+            at.translate(0, 5);
+            graphics.setColor(Color.BLUE);
+            graphics.draw(at.createTransformedShape(new Rectangle(20, 10)));
+        }
+    }
+
+    synchronized void paint(Graphics g) {
+        g.drawImage(front, 0, 0, null);
+    }
+}
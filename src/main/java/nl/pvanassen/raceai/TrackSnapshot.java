@@ -0,0 +1,55 @@
+package nl.pvanassen.raceai;
+
+import lombok.Getter;
+
+/**
+ * Immutable copy of where the cars on a track are, taken by the simulation for the render thread.
+ */
+public class TrackSnapshot {
+
+    @Getter
+    private final int size;
+
+    @Getter
+    private final int aliveCount;
+
+    private final float[] x;
+
+    private final float[] y;
+
+    private final float[] direction;
+
+    private final boolean[] crashed;
+
+    private final boolean[] best;
+
+    TrackSnapshot(int size, int aliveCount, float[] x, float[] y, float[] direction, boolean[] crashed, boolean[] best) {
+        this.size = size;
+        this.aliveCount = aliveCount;
+        this.x = x;
+        this.y = y;
+        this.direction = direction;
+        this.crashed = crashed;
+        this.best = best;
+    }
+
+    public float getX(int car) {
+        return x[car];
+    }
+
+    public float getY(int car) {
+        return y[car];
+    }
+
+    public float getDirection(int car) {
+        return direction[car];
+    }
+
+    public boolean isCrashed(int car) {
+        return crashed[car];
+    }
+
+    public boolean isBest(int car) {
+        return best[car];
+    }
+}
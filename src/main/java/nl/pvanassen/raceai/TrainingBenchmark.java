@@ -0,0 +1,21 @@
+package nl.pvanassen.raceai;
+
+/**
+ * Trains headless for a fixed number of generations and writes a {@link TrainingReport}.
+ * Usage: TrainingBenchmark &lt;generations&gt; &lt;report.json&gt;, other settings come from -Draceai.* properties.
+ */
+public class TrainingBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: TrainingBenchmark <generations> <report.json>");
+            System.exit(1);
+        }
+        System.setProperty("java.awt.headless", "true");
+        TrainingConfiguration configuration = TrainingConfiguration.fromSystemProperties().toBuilder()
+                .generations(Integer.parseInt(args[0]))
+                .report(args[1])
+                .build();
+        new TrainingGame(configuration, true);
+    }
+}
@@ -0,0 +1,112 @@
+package nl.pvanassen.raceai;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Settings of a training run. Defaults come from {@link Global} and can be overridden with -Draceai.* system properties.
+ */
+@Getter
+@Builder(toBuilder = true)
+@ToString
+public class TrainingConfiguration {
+
+    @Builder.Default
+    private final int populationSize = Global.POPULATION_SIZE;
+
+    /**
+     * One of roulette, tournament, rank or truncation.
+     */
+    @Builder.Default
+    private final String selection = "roulette";
+
+    @Builder.Default
+    private final int tournamentSize = 4;
+
+    /**
+     * Expected number of offspring of the fittest car under rank selection, between 1 and 2.
+     */
+    @Builder.Default
+    private final double rankPressure = 1.8;
+
+    /**
+     * Stop after this many generations, 0 trains until the process is killed.
+     */
+    @Builder.Default
+    private final int generations = 0;
+
+    @Builder.Default
+    private final long seed = 42;
+
+    /**
+     * Number of independent populations, the population size is split between them. 0 or 1 trains a single one.
+     */
+    @Builder.Default
+    private final int islands = 0;
+
+    @Builder.Default
+    private final int migrationInterval = 10;
+
+    @Builder.Default
+    private final int migrants = 5;
+
+    /**
+     * Where islands send their migrants, ring or random.
+     */
+    @Builder.Default
+    private final String topology = "ring";
+
+    /**
+     * Population checkpoint to resume from when it exists and to write every checkpointInterval generations,
+     * or null for none.
+     */
+    private final String checkpoint;
+
+    @Builder.Default
+    private final int checkpointInterval = 10;
+
+    @Builder.Default
+    private final boolean compressCheckpoint = false;
+
+    /**
+     * Where to write a {@link TrainingReport} as JSON when training stops, or null for none.
+     */
+    private final String report;
+
+    /**
+     * Where to append a {@link GenerationHistory} row after every generation, or null for none.
+     */
+    private final String history;
+
+    public static TrainingConfiguration fromSystemProperties() {
+        return TrainingConfiguration.builder()
+                .populationSize(Integer.getInteger("raceai.populationSize", Global.POPULATION_SIZE))
+                .selection(System.getProperty("raceai.selection", "roulette"))
+                .tournamentSize(Integer.getInteger("raceai.tournamentSize", 4))
+                .rankPressure(Double.parseDouble(System.getProperty("raceai.rankPressure", "1.8")))
+                .generations(Integer.getInteger("raceai.generations", 0))
+                .seed(Long.getLong("raceai.seed", 42))
+                .islands(Integer.getInteger("raceai.islands", 0))
+                .migrationInterval(Integer.getInteger("raceai.migrationInterval", 10))
+                .migrants(Integer.getInteger("raceai.migrants", 5))
+                .topology(System.getProperty("raceai.topology", "ring"))
+                .checkpoint(System.getProperty("raceai.checkpoint"))
+                .checkpointInterval(Integer.getInteger("raceai.checkpointInterval", 10))
+                .compressCheckpoint(Boolean.getBoolean("raceai.compressCheckpoint"))
+                .report(System.getProperty("raceai.report"))
+                .history(System.getProperty("raceai.history"))
+                .build()
+                .validate();
+    }
+
+    /**
+     * Fails on settings that would only break training at its first generation boundary.
+     */
+    public TrainingConfiguration validate() {
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("raceai.checkpointInterval must be more than 0, not " + checkpointInterval);
+        }
+        return this;
+    }
+}
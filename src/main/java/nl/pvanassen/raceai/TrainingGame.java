@@ -1,23 +1,52 @@
 package nl.pvanassen.raceai;
 
 import lombok.SneakyThrows;
-import nl.pvanassen.raceai.ai.CarAI;
+import nl.pvanassen.raceai.ai.GenerationStatistics;
 import nl.pvanassen.raceai.ai.Population;
+import nl.pvanassen.raceai.ai.SelectionStrategy;
+import nl.pvanassen.raceai.metrics.Metrics;
 
 import java.awt.*;
-
-import static nl.pvanassen.raceai.Global.POPULATION_SIZE;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
 
 public class TrainingGame extends Game {
 
-    private final DebugFrame debugFrame = new DebugFrame();
+    private final DebugFrame debugFrame;
 
     private final Population population;
 
-    private TrainingGame() {
-        super(Modus.TRAINING);
-        population = new Population(track, POPULATION_SIZE);
-        if (Global.DEBUG) {
+    private final TrainingConfiguration configuration;
+
+    // Only kept when the configuration asks for a report
+    private final TrainingReport report;
+
+    private final GenerationHistory history;
+
+    private long ticks = 0;
+
+    private long carTicks = 0;
+
+    private long simulationNanos = 0;
+
+    private long generationStart = System.nanoTime();
+
+    TrainingGame(TrainingConfiguration configuration, boolean headless) {
+        super(Modus.TRAINING, headless);
+        System.out.println("Training with " + configuration);
+        this.configuration = configuration.validate();
+        this.report = configuration.getReport() == null ? null : new TrainingReport(configuration);
+        debugFrame = headless ? null : new DebugFrame();
+        population = new Population(track, configuration.getPopulationSize(), SelectionStrategy.of(configuration),
+                configuration.getSeed());
+        history = configuration.getHistory() == null ? null
+                : new GenerationHistory(Paths.get(configuration.getHistory()), configuration.toString());
+        if (configuration.getCheckpoint() != null && Files.exists(Paths.get(configuration.getCheckpoint()))) {
+            population.resume(Paths.get(configuration.getCheckpoint()));
+        }
+        if (Global.DEBUG && !headless) {
             EventQueue.invokeLater(() -> {
                 debugFrame.replaceCar(population.getFirstCar());
             });
@@ -25,25 +54,83 @@ public class TrainingGame extends Game {
         start();
     }
 
+    @Override
+    protected IntConsumer driver() {
+        return population::drive;
+    }
+
     @SneakyThrows
     protected void tick() {
-        population.tick();
+        ticks++;
+        carTicks += carsTicked;
+        simulationNanos += trackTickNanos;
         if (population.done()) {
-            population.getBest().ifPresent(CarAI::saveBrain);
+            long took = System.nanoTime() - generationStart;
+            Metrics.generation(took);
+            System.out.println("Generation took " + ticks + " ticks in " + (took / 1_000_000) + " ms, " + (long)(ticks / (took / 1_000_000_000d)) + " ticks/s");
+            long persistenceStart = System.nanoTime();
+            population.saveBest();
+            long persistenceNanos = System.nanoTime() - persistenceStart;
             System.out.println("Done, next round!");
-            track.clear();
+            track.logCacheStats();
+            int generation = population.getGeneration();
+            double bestFitness = population.getGenerationBestFitness();
+            GenerationStatistics statistics = history == null ? null : population.statistics();
+            long selectionStart = System.nanoTime();
             population.naturalSelection();
-            if (Global.DEBUG) {
+            long selectionNanos = System.nanoTime() - selectionStart;
+            if (report != null) {
+                report.generation(generation, ticks, carTicks, simulationNanos, selectionNanos, persistenceNanos, bestFitness);
+            }
+            if (history != null) {
+                history.append(generation, ticks, carTicks, took, simulationNanos, selectionNanos, persistenceNanos,
+                        statistics, population.getMutationRate(), population.getTakeTop());
+            }
+            if (Global.DEBUG && !headless) {
                 EventQueue.invokeLater(() -> {
                     debugFrame.replaceCar(population.getFirstCar());
                 });
             }
+            ticks = 0;
+            carTicks = 0;
+            simulationNanos = 0;
+            generationStart = System.nanoTime();
+            boolean finished = configuration.getGenerations() > 0 && population.getGeneration() >= configuration.getGenerations();
+            if (configuration.getCheckpoint() != null
+                    && (finished || population.getGeneration() % configuration.getCheckpointInterval() == 0)) {
+                population.checkpoint(Paths.get(configuration.getCheckpoint()), configuration.isCompressCheckpoint());
+            }
+            if (finished) {
+                finish();
+            }
+        }
+        if (debugFrame != null) {
+            debugFrame.repaint();
         }
-        debugFrame.repaint();
     }
 
-    public static void main(String[] args) {
-        new TrainingGame();
+    private void finish() {
+        if (report != null) {
+            report.write(Paths.get(configuration.getReport()));
+        }
+        if (history != null) {
+            history.close();
+        }
+        population.close();
+        stop();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean headless = Arrays.asList(args).contains("--headless");
+        if (headless) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        TrainingConfiguration configuration = TrainingConfiguration.fromSystemProperties();
+        if (configuration.getIslands() > 1) {
+            IslandTraining.train(configuration);
+            return;
+        }
+        new TrainingGame(configuration, headless);
     }
 
 }
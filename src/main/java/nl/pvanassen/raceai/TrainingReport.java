@@ -0,0 +1,118 @@
+package nl.pvanassen.raceai;
+
+import com.google.gson.GsonBuilder;
+import lombok.SneakyThrows;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throughput of a training run, written as JSON so runs of different builds can be compared.
+ * Simulation is the fused track tick, which senses, decides, acts and collides in one pass.
+ */
+public class TrainingReport {
+
+    private final String track = "track1";
+
+    private final long seed;
+
+    private final int populationSize;
+
+    private final String selection;
+
+    private final int availableProcessors = Runtime.getRuntime().availableProcessors();
+
+    private final String javaVersion = System.getProperty("java.version");
+
+    private int generations;
+
+    private long ticks;
+
+    private long carTicks;
+
+    private long wallMillis;
+
+    private double carTicksPerSecond;
+
+    private double generationsPerMinute;
+
+    private long simulationMillis;
+
+    private long selectionMillis;
+
+    private long persistenceMillis;
+
+    private long peakHeapBytes;
+
+    private final List<Generation> generationList = new ArrayList<>();
+
+    private final transient long start = System.nanoTime();
+
+    TrainingReport(TrainingConfiguration configuration) {
+        this.seed = configuration.getSeed();
+        this.populationSize = configuration.getPopulationSize();
+        this.selection = configuration.getSelection();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    void generation(int generation, long ticks, long carTicks, long simulationNanos, long selectionNanos, long persistenceNanos, double bestFitness) {
+        Generation entry = new Generation();
+        entry.generation = generation;
+        entry.ticks = ticks;
+        entry.carTicks = carTicks;
+        entry.simulationMillis = simulationNanos / 1_000_000;
+        entry.selectionMillis = selectionNanos / 1_000_000;
+        entry.persistenceMillis = persistenceNanos / 1_000_000;
+        entry.carTicksPerSecond = carTicks / (simulationNanos / 1_000_000_000d);
+        entry.bestFitness = bestFitness;
+        generationList.add(entry);
+
+        generations++;
+        this.ticks += ticks;
+        this.carTicks += carTicks;
+        simulationMillis += entry.simulationMillis;
+        selectionMillis += entry.selectionMillis;
+        persistenceMillis += entry.persistenceMillis;
+    }
+
+    @SneakyThrows
+    void write(Path file) {
+        wallMillis = (System.nanoTime() - start) / 1_000_000;
+        carTicksPerSecond = carTicks / (wallMillis / 1000d);
+        generationsPerMinute = generations / (wallMillis / 60_000d);
+        peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        Files.write(file, new GsonBuilder().setPrettyPrinting().create().toJson(this).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Wrote training report to " + file);
+    }
+
+    private static class Generation {
+        private int generation;
+
+        private long ticks;
+
+        private long carTicks;
+
+        private long simulationMillis;
+
+        private long selectionMillis;
+
+        private long persistenceMillis;
+
+        private double carTicksPerSecond;
+
+        private double bestFitness;
+    }
+}
@@ -0,0 +1,84 @@
+package nl.pvanassen.raceai.ai;
+
+import nl.pvanassen.raceai.Car;
+import nl.pvanassen.raceai.CarStates;
+import nl.pvanassen.raceai.Track;
+
+import static nl.pvanassen.raceai.CarType.createNormal;
+
+/**
+ * Drives batches of genomes on a track of its own until every car stopped, and reports their scores. Used by
+ * distributed workers, which only simulate and leave breeding to the coordinator.
+ */
+public class BatchEvaluator {
+
+    private final Track track;
+
+    private final CarStates states;
+
+    private final int genomeLength = CarAI.genomeLength();
+
+    private float[] genomes = new float[0];
+
+    private CarAI[] cars = new CarAI[0];
+
+    public BatchEvaluator(Track track) {
+        this.track = track;
+        this.states = track.getCarStates();
+    }
+
+    public static int genomeLength() {
+        return CarAI.genomeLength();
+    }
+
+    /**
+     * Scores the first count genomes in the given array, genome after genome.
+     */
+    public double[] evaluate(float[] batch, int count) {
+        ensureCapacity(count);
+        System.arraycopy(batch, 0, genomes, 0, count * genomeLength);
+        for (int slot = 0; slot < cars.length; slot++) {
+            cars[slot].recycle(false);
+            if (slot >= count) {
+                // Left over from a larger batch, keep it off the track
+                cars[slot].getCar().crashed();
+            }
+        }
+        do {
+            track.tick(this::drive);
+        } while (states.getAliveCount() > 0);
+
+        double[] scores = new double[count];
+        for (int slot = 0; slot < count; slot++) {
+            scores[slot] = cars[slot].getScore();
+        }
+        return scores;
+    }
+
+    private void drive(int slot) {
+        cars[slot].calculate();
+    }
+
+    private void ensureCapacity(int count) {
+        if (cars.length >= count) {
+            return;
+        }
+        // Brains are views on the genome buffer, so a larger buffer needs new views for the cars that exist
+        genomes = new float[count * genomeLength];
+        CarAI[] grown = new CarAI[count];
+        for (int slot = 0; slot < count; slot++) {
+            Car car;
+            if (slot < cars.length) {
+                car = cars[slot].getCar();
+            }
+            else {
+                car = track.createCar(createNormal("Worker-" + slot));
+                if (car.getSlot() != slot) {
+                    throw new IllegalStateException("A batch evaluator needs a track of its own");
+                }
+            }
+            grown[slot] = new CarAI(car, CarAI.brainView(genomes, slot * genomeLength, "net-" + car.getId()), "Worker-" + slot);
+        }
+        cars = grown;
+    }
+}
@@ -0,0 +1,152 @@
+package nl.pvanassen.raceai.ai;
+
+import lombok.SneakyThrows;
+import nl.pvanassen.raceai.metrics.BrainSaveEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Saves brains on a thread of its own, so a generation boundary never waits for the disk. Every brain is written as
+ * a compact .brain file and as JSON, each to a temporary file that is renamed when complete. Only the last retention
+ * saves of this writer are kept; brains saved by earlier runs are left alone.
+ *
+ * <p>The queue is small: when the writer falls behind, new saves are skipped rather than stalling the simulation.</p>
+ */
+class BrainWriter implements Runnable {
+
+    static final String BINARY_EXTENSION = ".brain";
+
+    static final String JSON_EXTENSION = ".json";
+
+    private static final int QUEUE_CAPACITY = 4;
+
+    private static final Job STOP = new Job(null, null, 0);
+
+    private final BlockingQueue<Job> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private final ArrayDeque<String> written = new ArrayDeque<>();
+
+    private final int retention;
+
+    private final Thread thread;
+
+    // Writes what is still queued when the JVM exits before close is called
+    private final Thread shutdownHook = new Thread(this::close);
+
+    private volatile boolean closed = false;
+
+    BrainWriter(int retention) {
+        this.retention = retention;
+        this.thread = new Thread(this, "brain-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Queues a copy of the brain, the caller is free to change it afterwards.
+     */
+    void save(String id, NeuralNet brain) {
+        if (closed) {
+            return;
+        }
+        if (!queue.offer(new Job(id, brain.copy(), System.currentTimeMillis()))) {
+            System.out.println("Brain writer is behind, not saving " + id);
+        }
+    }
+
+    /**
+     * Writes everything still queued and stops the writer thread.
+     */
+    @SneakyThrows
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.put(STOP);
+        thread.join();
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }
+            catch (IllegalStateException e) {
+                // The JVM is already shutting down
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Job job;
+            try {
+                job = queue.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (job == STOP) {
+                return;
+            }
+            try {
+                String name = job.id + "-" + job.timestamp;
+                write(name, job.brain);
+                written.add(name);
+                while (written.size() > retention) {
+                    String oldest = written.poll();
+                    Files.deleteIfExists(Paths.get(oldest + BINARY_EXTENSION));
+                    Files.deleteIfExists(Paths.get(oldest + JSON_EXTENSION));
+                }
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void write(String name, NeuralNet brain) {
+        BrainSaveEvent event = new BrainSaveEvent();
+        event.begin();
+        byte[] binary = brain.toBinary();
+        byte[] json = brain.toJson().getBytes(StandardCharsets.UTF_8);
+        writeAtomically(Paths.get(name + BINARY_EXTENSION), binary);
+        writeAtomically(Paths.get(name + JSON_EXTENSION), json);
+        event.end();
+        if (event.shouldCommit()) {
+            event.name = name;
+            event.bytes = binary.length + json.length;
+            event.commit();
+        }
+    }
+
+    @SneakyThrows
+    private static void writeAtomically(Path file, byte[] bytes) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, bytes);
+        Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private static class Job {
+        private final String id;
+
+        private final NeuralNet brain;
+
+        private final long timestamp;
+
+        private Job(String id, NeuralNet brain, long timestamp) {
+            this.id = id;
+            this.brain = brain;
+            this.timestamp = timestamp;
+        }
+    }
+}
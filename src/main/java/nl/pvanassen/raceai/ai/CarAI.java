@@ -2,12 +2,10 @@ package nl.pvanassen.raceai.ai;
 
 import lombok.Getter;
 import lombok.Setter;
-import lombok.SneakyThrows;
 import nl.pvanassen.raceai.*;
+import nl.pvanassen.raceai.metrics.Metrics;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.file.Path;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
@@ -21,13 +19,14 @@ public class CarAI {
 
     private static final int NODES = 6;
 
-    private static final AtomicInteger carNumber = new AtomicInteger(0);
+    private static final ThreadLocal<double[]> INPUT = ThreadLocal.withInitial(() -> new double[5]);
 
     @Getter
     private final NeuralNet brain;
 
     private final Car car;
 
+    // Not set for cars that live in a PopulationArena
     private final Function<CarType, Car> carProducer;
 
     private final String id;
@@ -37,24 +36,28 @@ public class CarAI {
     @Setter
     private BiConsumer<double[], double[]> visionDecisionConsumer;
 
-    CarAI(Function<CarType, Car> carProducer) {
-        this.carProducer = carProducer;
-        this.id = "CarAI-" + carNumber.getAndIncrement();
-        this.car = carProducer.apply(createNormal(this.id));
-        brain = new NeuralNet(5, NODES, 9, LAYERS, "net-" + car.getId());
+    public CarAI(Function<CarType, Car> carProducer, String id, String json) {
+        this(carProducer, id, NeuralNet.fromJson(json));
     }
 
-    public CarAI(Function<CarType, Car> carProducer, String id, String json) {
+    /**
+     * Drives a brain saved as .brain or as JSON.
+     */
+    public CarAI(Function<CarType, Car> carProducer, String id, Path file) {
+        this(carProducer, id, NeuralNet.read(file));
+    }
+
+    private CarAI(Function<CarType, Car> carProducer, String id, NeuralNet brain) {
         this.carProducer = carProducer;
         this.id = id;
         this.car = carProducer.apply(createNormal(this.id));
-        this.brain = NeuralNet.fromJson(json);
+        this.brain = brain;
     }
 
-    private CarAI(Function<CarType, Car> carProducer, NeuralNet brain) {
-        this.carProducer = carProducer;
-        this.id = "CarAI-" + carNumber.getAndIncrement();
-        this.car = carProducer.apply(createNormal(this.id));
+    CarAI(Car car, NeuralNet brain, String id) {
+        this.carProducer = null;
+        this.id = id;
+        this.car = car;
         this.brain = brain;
     }
 
@@ -65,27 +68,54 @@ public class CarAI {
         this.brain = brain;
     }
 
+    static int genomeLength() {
+        return NeuralNet.genomeLength(5, NODES, 9, LAYERS);
+    }
+
+    static NeuralNet brainView(float[] buffer, int base, String id) {
+        return NeuralNet.view(5, NODES, 9, LAYERS, id, buffer, base);
+    }
+
+    /**
+     * Gets this car ready to drive again with whatever genome its brain now holds.
+     */
+    void recycle(boolean best) {
+        fitness = Double.MIN_VALUE;
+        car.reset(best);
+    }
+
     public boolean isAlive() {
         return !car.isCrashed();
     }
 
     public void calculate() {
-        CarMetrics carMetrics = car.getCarMetrics();
-        double[] result = brain.output(carMetrics.getInput());
-
+        int idx;
         if (visionDecisionConsumer != null) {
+            CarMetrics carMetrics = car.getCarMetrics();
+            double[] result = brain.output(carMetrics.getInput());
             visionDecisionConsumer.accept(carMetrics.getInput(), result);
+            idx = NeuralNet.strongest(result, result.length);
         }
-
-        double max = 0;
-        int idx = -1;
-        for (int i = 0; i < result.length; i++) {
-            if (result[i] > max) {
-                max = result[i];
-                idx = i;
-            }
+        else if (Metrics.sampled(car.getSlot())) {
+            long start = System.nanoTime();
+            double[] input = INPUT.get();
+            car.fillInput(input);
+            idx = brain.decide(input);
+            long decided = System.nanoTime();
+            Metrics.INFERENCE.record(decided - start);
+            act(idx);
+            Metrics.ACTION.record(System.nanoTime() - decided);
+            return;
+        }
+        else {
+            double[] input = INPUT.get();
+            car.fillInput(input);
+            idx = brain.decide(input);
         }
+        act(idx);
+    }
 
+    private void act(int idx) {
         Accelerate accelerate;
         Turn turn;
         if (idx < 3) {
@@ -118,23 +148,10 @@ public class CarAI {
         return new CarAI(carProducer, brain.copy(), id);
     }
 
-    public CarAI crossoverAndMutate(CarAI selectParent, float mutationRate) {
-        return new CarAI(carProducer, brain.crossoverAndMutate(selectParent.brain, mutationRate));
-    }
-
     public double calculateFitness() {
         if (fitness == Double.MIN_VALUE) {
             fitness = car.getScore();
         }
         return fitness;
     }
-
-    @SneakyThrows
-    public void saveBrain() {
-        File file = new File(id + "-" + System.currentTimeMillis() + ".json");
-        try (FileWriter fileWriter = new FileWriter(file)) {
-            fileWriter.write(brain.toJson());
-            fileWriter.flush();
-        }
-    }
 }
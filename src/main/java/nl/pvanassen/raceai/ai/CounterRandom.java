@@ -0,0 +1,126 @@
+package nl.pvanassen.raceai.ai;
+
+import java.util.Random;
+
+/**
+ * A SplitMix64 stream whose starting point is a hash of (seed, generation, index). Every child of every generation
+ * gets its own stream, so a run with the same seed breeds the same genomes whichever thread breeds which child.
+ *
+ * <p>Not thread safe. Keep one per thread and {@link #key(long, long, long) key} it before every use.</p>
+ */
+class CounterRandom extends Random {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long state;
+
+    private double nextGaussian;
+
+    private boolean haveNextGaussian;
+
+    CounterRandom(long seed) {
+        key(seed, 0, 0);
+    }
+
+    CounterRandom key(long seed, long generation, long index) {
+        state = mix64(mix64(seed + GOLDEN_GAMMA * (generation + 1)) + GOLDEN_GAMMA * (index + 1));
+        haveNextGaussian = false;
+        return this;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        // Also called by the Random constructor
+        key(seed, 0, 0);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(state += GOLDEN_GAMMA);
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        // Multiply and shift, the bias is below 2^-32 for the small bounds used here
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    @Override
+    public double nextGaussian() {
+        if (haveNextGaussian) {
+            haveNextGaussian = false;
+            return nextGaussian;
+        }
+        double v1;
+        double v2;
+        double s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        haveNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     * Picks every index below length independently with the given rate, in increasing order, and returns how many
+     * were written to indices. Draws the gaps between picks, so a low rate costs a few draws instead of one per index.
+     */
+    int sample(int[] indices, int length, float rate) {
+        if (rate <= 0) {
+            return 0;
+        }
+        if (rate >= 1) {
+            for (int i = 0; i < length; i++) {
+                indices[i] = i;
+            }
+            return length;
+        }
+        double logMiss = StrictMath.log1p(-rate);
+        int count = 0;
+        long index = -1;
+        while (true) {
+            index += 1 + (long) (StrictMath.log1p(-nextDouble()) / logMiss);
+            if (index >= length) {
+                return count;
+            }
+            indices[count++] = (int) index;
+        }
+    }
+
+    /**
+     * Fills the first count entries of target with standard normal values.
+     */
+    void fillGaussian(float[] target, int count) {
+        for (int i = 0; i < count; i++) {
+            target[i] = (float) nextGaussian();
+        }
+    }
+}
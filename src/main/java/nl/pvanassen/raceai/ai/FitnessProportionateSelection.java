@@ -0,0 +1,52 @@
+package nl.pvanassen.raceai.ai;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Roulette wheel over a fixed set of parents. The prefix sums of their fitness are built once per generation,
+ * after which every draw is a binary search.
+ *
+ * <p>The wheel spans the fitness of the whole population, not only of the parents. A draw that lands past the
+ * parents goes to the first (fittest) parent, as the linear scan this replaces did.</p>
+ */
+class FitnessProportionateSelection implements SelectionStrategy.Selector {
+
+    private final List<CarAI> parents;
+
+    private final double[] prefixSums;
+
+    private final double total;
+
+    FitnessProportionateSelection(List<CarAI> parents, double populationFitnessSum) {
+        this.parents = parents;
+        this.prefixSums = new double[parents.size()];
+        this.total = populationFitnessSum;
+        double sum = 0;
+        for (int i = 0; i < prefixSums.length; i++) {
+            sum += parents.get(i).calculateFitness();
+            prefixSums[i] = sum;
+        }
+    }
+
+    @Override
+    public CarAI select(Random random) {
+        double rand = random.nextDouble() * total;
+        if (prefixSums.length == 0 || prefixSums[prefixSums.length - 1] <= rand) {
+            return parents.get(0);
+        }
+        // First parent whose running sum is past the random point
+        int low = 0;
+        int high = prefixSums.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prefixSums[mid] > rand) {
+                high = mid;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+        return parents.get(low);
+    }
+}
@@ -0,0 +1,85 @@
+package nl.pvanassen.raceai.ai;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import nl.pvanassen.raceai.Car;
+
+import java.util.Arrays;
+
+/**
+ * How the cars of one generation did: the distribution of their fitness, how long they drove and how many
+ * checkpoints they passed.
+ */
+@Getter
+@Builder
+@ToString
+public class GenerationStatistics {
+
+    private final double fitnessMin;
+
+    private final double fitnessP10;
+
+    private final double fitnessP25;
+
+    private final double fitnessMedian;
+
+    private final double fitnessP75;
+
+    private final double fitnessP90;
+
+    private final double fitnessMax;
+
+    private final double fitnessMean;
+
+    private final double lifetimeMean;
+
+    private final long lifetimeMax;
+
+    private final double checkpointsMean;
+
+    private final int checkpointsMax;
+
+    static GenerationStatistics of(CarAI[] cars) {
+        double[] fitness = new double[cars.length];
+        double fitnessSum = 0;
+        long lifetimeSum = 0;
+        long lifetimeMax = 0;
+        long checkpointsSum = 0;
+        int checkpointsMax = 0;
+        for (int i = 0; i < cars.length; i++) {
+            fitness[i] = cars[i].calculateFitness();
+            fitnessSum += fitness[i];
+            Car car = cars[i].getCar();
+            lifetimeSum += car.getLifetime();
+            lifetimeMax = Math.max(lifetimeMax, car.getLifetime());
+            checkpointsSum += car.getCheckpointsPassed();
+            checkpointsMax = Math.max(checkpointsMax, car.getCheckpointsPassed());
+        }
+        Arrays.sort(fitness);
+        return GenerationStatistics.builder()
+                .fitnessMin(fitness[0])
+                .fitnessP10(quantile(fitness, 0.1))
+                .fitnessP25(quantile(fitness, 0.25))
+                .fitnessMedian(quantile(fitness, 0.5))
+                .fitnessP75(quantile(fitness, 0.75))
+                .fitnessP90(quantile(fitness, 0.9))
+                .fitnessMax(fitness[fitness.length - 1])
+                .fitnessMean(fitnessSum / cars.length)
+                .lifetimeMean((double)lifetimeSum / cars.length)
+                .lifetimeMax(lifetimeMax)
+                .checkpointsMean((double)checkpointsSum / cars.length)
+                .checkpointsMax(checkpointsMax)
+                .build();
+    }
+
+    /**
+     * Interpolates between the two closest ranks of the sorted values.
+     */
+    private static double quantile(double[] sorted, double q) {
+        double rank = q * (sorted.length - 1);
+        int low = (int)rank;
+        int high = Math.min(low + 1, sorted.length - 1);
+        return sorted[low] + (sorted[high] - sorted[low]) * (rank - low);
+    }
+}
@@ -0,0 +1,142 @@
+package nl.pvanassen.raceai.ai;
+
+import nl.pvanassen.raceai.Track;
+import nl.pvanassen.raceai.TrainingConfiguration;
+import nl.pvanassen.raceai.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Phaser;
+
+/**
+ * Several populations that evolve independently, each on a thread and track of its own. Every migrationInterval
+ * generations the islands meet at a phaser and send copies of their fittest genomes to a neighbour, either the next
+ * island in a ring or a random other island. Immigrants replace the last cars of the next generation.
+ *
+ * <p>An island that fails terminates the phaser, which releases the islands waiting for it and stops the others at
+ * their next migration.</p>
+ */
+public class IslandModel {
+
+    private final List<Track> tracks;
+
+    private final List<Population> populations;
+
+    private final int generations;
+
+    private final int migrationInterval;
+
+    private final int migrants;
+
+    private final boolean ring;
+
+    private final long seed;
+
+    private final float[][][] outbox;
+
+    private final List<List<float[]>> inbox = new ArrayList<>();
+
+    private final Phaser phaser;
+
+    private int migrations = 0;
+
+    public IslandModel(List<Track> tracks, List<Population> populations, TrainingConfiguration configuration) {
+        if (tracks.size() != populations.size()) {
+            throw new IllegalArgumentException("Every island needs a track of its own");
+        }
+        switch (configuration.getTopology()) {
+            case "ring":
+                ring = true;
+                break;
+            case "random":
+                ring = false;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown migration topology " + configuration.getTopology());
+        }
+        this.tracks = tracks;
+        this.populations = populations;
+        this.generations = configuration.getGenerations();
+        this.migrationInterval = configuration.getMigrationInterval();
+        this.migrants = configuration.getMigrants();
+        this.seed = configuration.getSeed();
+        this.outbox = new float[populations.size()][][];
+        for (int i = 0; i < populations.size(); i++) {
+            inbox.add(new ArrayList<>());
+        }
+        this.phaser = new Phaser(populations.size()) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                migrate();
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Trains all islands until the configured number of generations, or forever when that is 0.
+     */
+    public void train() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < populations.size(); i++) {
+            int island = i;
+            Thread thread = new Thread(() -> run(island), "island-" + island);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        populations.forEach(Population::close);
+    }
+
+    private void run(int island) {
+        Track track = tracks.get(island);
+        Population population = populations.get(island);
+        try {
+            for (int generation = 1; generations == 0 || generation <= generations; generation++) {
+                long start = System.nanoTime();
+                while (!population.done()) {
+                    track.tick(population::drive);
+                }
+                Metrics.generation(System.nanoTime() - start);
+                System.out.println("Island " + island + " finished generation " + population.getGeneration());
+                population.saveBest();
+                boolean migrate = populations.size() > 1 && migrationInterval > 0 && generation % migrationInterval == 0;
+                if (migrate) {
+                    outbox[island] = population.emigrants(migrants);
+                }
+                population.naturalSelection();
+                if (migrate) {
+                    if (phaser.arriveAndAwaitAdvance() < 0) {
+                        System.out.println("Island " + island + " stopped, another island failed");
+                        return;
+                    }
+                    population.immigrate(inbox.get(island).toArray(new float[0][]));
+                }
+            }
+        }
+        catch (RuntimeException | Error e) {
+            e.printStackTrace();
+            // Release the other islands instead of leaving them waiting for this one
+            phaser.forceTermination();
+        }
+    }
+
+    /**
+     * Runs once all islands reached the phaser, before any of them continues.
+     */
+    private void migrate() {
+        int islands = populations.size();
+        CounterRandom random = new CounterRandom(seed);
+        inbox.forEach(List::clear);
+        for (int island = 0; island < islands; island++) {
+            int target = ring ? (island + 1) % islands : (island + 1 + random.key(seed, migrations, island).nextInt(islands - 1)) % islands;
+            for (float[] genome : outbox[island]) {
+                inbox.get(target).add(genome);
+            }
+        }
+        migrations++;
+        System.out.println("Migration " + migrations + ": " + migrants + " genomes per island, " + (ring ? "ring" : "random") + " topology");
+    }
+}
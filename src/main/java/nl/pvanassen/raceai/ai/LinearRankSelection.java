@@ -0,0 +1,31 @@
+package nl.pvanassen.raceai.ai;
+
+import lombok.ToString;
+
+/**
+ * Linear ranking without ranking anything: a binary tournament in which the fitter car wins with probability
+ * pressure / 2 picks parents with the same distribution as linear rank selection with that pressure.
+ */
+@ToString
+class LinearRankSelection implements SelectionStrategy {
+
+    private final double pressure;
+
+    LinearRankSelection(double pressure) {
+        if (pressure < 1 || pressure > 2) {
+            throw new IllegalArgumentException("Rank pressure must be between 1 and 2");
+        }
+        this.pressure = pressure;
+    }
+
+    @Override
+    public Selector prepare(CarAI[] cars, int takeTop) {
+        double fitterWins = pressure / 2;
+        return random -> {
+            CarAI first = cars[random.nextInt(cars.length)];
+            CarAI second = cars[random.nextInt(cars.length)];
+            boolean firstFitter = first.calculateFitness() >= second.calculateFitness();
+            return firstFitter == (random.nextDouble() < fitterWins) ? first : second;
+        };
+    }
+}
@@ -2,13 +2,40 @@ package nl.pvanassen.raceai.ai;
 
 import com.google.gson.Gson;
 import lombok.Getter;
+import lombok.SneakyThrows;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A fully connected network whose weights live in one flat genome. Layer after layer, each weight matrix is stored
+ * row by row, with the bias weight as the last column of every row. The genome can start at an offset in a larger
+ * array, which lets a whole population share one buffer.
+ */
 public class NeuralNet {
 
+    private static final int BRAIN_MAGIC = 0x4252414E;
+
+    private static final int BRAIN_VERSION = 1;
+
     private static final AtomicInteger netNumber = new AtomicInteger(0);
 
+    private static final AtomicLong created = new AtomicLong(0);
+
+    private static final ThreadLocal<double[][]> SCRATCH = ThreadLocal.withInitial(() -> new double[2][0]);
+
+    private static final ThreadLocal<int[]> MUTATIONS = ThreadLocal.withInitial(() -> new int[0]);
+
+    private static final ThreadLocal<float[]> NOISE = ThreadLocal.withInitial(() -> new float[0]);
+
     private final int iNodes;
 
     private final int hNodes;
@@ -17,66 +44,302 @@ public class NeuralNet {
 
     private final int hLayers;
 
-    private final Matrix[] weights;
+    private float[] genome;
+
+    private transient int base;
+
+    // Only set when reading brains saved before the genome existed
+    private Matrix[] weights;
+
+    private transient int[] offsets;
 
     @Getter
     private final String id;
 
     NeuralNet(int input, int hidden, int output, int hiddenLayers, String id) {
+        this(input, hidden, output, hiddenLayers, id, null, 0);
+        randomize();
+    }
+
+    private NeuralNet(int input, int hidden, int output, int hiddenLayers, String id, float[] genome, int base) {
         this.id = id;
         iNodes = input;
         hNodes = hidden;
         oNodes = output;
         hLayers = hiddenLayers;
+        this.genome = genome == null ? new float[offsets()[hLayers + 1]] : genome;
+        this.base = base;
+        created.incrementAndGet();
+    }
+
+    /**
+     * A network whose genome lives in the given buffer, starting at base.
+     */
+    static NeuralNet view(int input, int hidden, int output, int hiddenLayers, String id, float[] buffer, int base) {
+        return new NeuralNet(input, hidden, output, hiddenLayers, id, buffer, base);
+    }
+
+    static int genomeLength(int input, int hidden, int output, int hiddenLayers) {
+        return (input + 1) * hidden + (hiddenLayers - 1) * (hidden + 1) * hidden + (hidden + 1) * output;
+    }
+
+    /**
+     * Number of networks constructed so far, to show that generation turnover creates none.
+     */
+    static long created() {
+        return created.get();
+    }
+
+    void randomize() {
+        randomize(ThreadLocalRandom.current());
+    }
 
-        weights = new Matrix[hLayers + 1];
-        weights[0] = new Matrix(hNodes, iNodes + 1);
-        for (int i = 1; i < hLayers; i++) {
-            weights[i] = new Matrix(hNodes, hNodes + 1);
+    void randomize(Random random) {
+        for (int i = base; i < base + length(); i++) {
+            genome[i] = random.nextFloat() * 2 - 1;
         }
-        weights[weights.length - 1] = new Matrix(oNodes, hNodes + 1);
+    }
+
+    private int length() {
+        return offsets()[hLayers + 1];
+    }
+
+    private int rows(int layer) {
+        return layer == hLayers ? oNodes : hNodes;
+    }
+
+    private int cols(int layer) {
+        return (layer == 0 ? iNodes : hNodes) + 1;
+    }
+
+    /**
+     * Start of every layer in the genome, plus the genome length as the last entry.
+     */
+    private int[] offsets() {
+        if (offsets == null) {
+            int[] offsets = new int[hLayers + 2];
+            for (int layer = 0; layer <= hLayers; layer++) {
+                offsets[layer + 1] = offsets[layer] + rows(layer) * cols(layer);
+            }
+            this.offsets = offsets;
+        }
+        return offsets;
     }
 
     public double[] output(double[] inputsArr) {
-        Matrix inputs = weights[0].singleColumnMatrixFromArray(inputsArr);
+        return Arrays.copyOf(forward(inputsArr), oNodes);
+    }
+
+    /**
+     * Runs the network and returns the index of the strongest output, or -1 when no output is positive.
+     * Works in per thread scratch buffers, so nothing is allocated.
+     */
+    public int decide(double[] inputsArr) {
+        return strongest(forward(inputsArr), oNodes);
+    }
+
+    static int strongest(double[] result, int length) {
+        double max = 0;
+        int idx = -1;
+        for (int i = 0; i < length; i++) {
+            if (result[i] > max) {
+                max = result[i];
+                idx = i;
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Every layer is dotted with the previous layer plus a bias of 1 and goes through relu.
+     * Returns a scratch buffer holding the outputs in its first oNodes entries.
+     */
+    private double[] forward(double[] inputsArr) {
+        double[][] scratch = SCRATCH.get();
+        int size = Math.max(iNodes, Math.max(hNodes, oNodes)) + 1;
+        if (scratch[0].length < size) {
+            scratch[0] = new double[size];
+            scratch[1] = new double[size];
+        }
+        double[] current = scratch[0];
+        double[] next = scratch[1];
 
-        Matrix curr_bias = inputs.addBias();
+        System.arraycopy(inputsArr, 0, current, 0, iNodes);
+        current[iNodes] = 1;
 
-        for (int i = 0; i < hLayers; i++) {
-            Matrix hidden_ip = weights[i].dot(curr_bias);
-            Matrix hidden_op = hidden_ip.activate();
-            curr_bias = hidden_op.addBias();
+        int[] offsets = offsets();
+        for (int layer = 0; layer < hLayers; layer++) {
+            dot(offsets[layer], rows(layer), cols(layer), current, next);
+            next[hNodes] = 1;
+            double[] swap = current;
+            current = next;
+            next = swap;
         }
 
-        Matrix output_ip = weights[weights.length - 1].dot(curr_bias);
-        Matrix output = output_ip.activate();
+        dot(offsets[hLayers], oNodes, hNodes + 1, current, next);
+        return next;
+    }
 
-        return output.toArray();
+    private void dot(int offset, int rows, int cols, double[] column, double[] target) {
+        float[] genome = this.genome;
+        for (int i = 0; i < rows; i++) {
+            int row = base + offset + i * cols;
+            float sum = 0;
+            for (int k = 0; k < cols; k++) {
+                sum += genome[row + k] * column[k];
+            }
+            target[i] = Math.max(0, sum);
+        }
     }
 
+    /**
+     * Per layer, takes the weights up to a random crossover point from this network and the rest from the partner.
+     * Every weight is replaced by a small random value at the mutation rate.
+     */
     public NeuralNet crossoverAndMutate(NeuralNet partner, float mr) {
-        NeuralNet child = new NeuralNet(iNodes, hNodes, oNodes, hLayers, "Crossover " + netNumber.getAndIncrement());
-        for (int i = 0; i < weights.length; i++) {
-            child.weights[i] = weights[i].crossoverAndMutate(partner.weights[i], mr);
-        }
+        NeuralNet child = new NeuralNet(iNodes, hNodes, oNodes, hLayers, "Crossover " + netNumber.getAndIncrement(), null, 0);
+        crossoverAndMutateInto(partner, mr, child, new CounterRandom(ThreadLocalRandom.current().nextLong()));
         return child;
     }
 
-    public NeuralNet copy() {
-        NeuralNet clone = new NeuralNet(iNodes, hNodes, oNodes, hLayers, id);
-        for (int i = 0; i < weights.length; i++) {
-            clone.weights[i] = weights[i].copy();
+    /**
+     * Same as {@link #crossoverAndMutate(NeuralNet, float)}, but overwrites the genome of an existing child and
+     * draws from the given stream only. The weights to mutate are sampled by their gaps and their noise is drawn in
+     * bulk, so a child costs a few draws per layer plus a few per mutation.
+     */
+    void crossoverAndMutateInto(NeuralNet partner, float mr, NeuralNet child, CounterRandom random) {
+        int[] offsets = offsets();
+        float[] target = child.genome;
+        for (int layer = 0; layer <= hLayers; layer++) {
+            int start = offsets[layer];
+            int crossover = start + random.nextInt(offsets[layer + 1] - start);
+            System.arraycopy(genome, base + start, target, child.base + start, crossover - start + 1);
+            System.arraycopy(partner.genome, partner.base + crossover + 1, target, child.base + crossover + 1, offsets[layer + 1] - crossover - 1);
+        }
+
+        int length = length();
+        int[] mutations = MUTATIONS.get();
+        if (mutations.length < length) {
+            mutations = new int[length];
+            MUTATIONS.set(mutations);
+            NOISE.set(new float[length]);
         }
+        float[] noise = NOISE.get();
+        int count = random.sample(mutations, length, mr);
+        random.fillGaussian(noise, count);
+        for (int i = 0; i < count; i++) {
+            target[child.base + mutations[i]] = Math.max(-1, Math.min(1, noise[i] / 5));
+        }
+    }
+
+    public NeuralNet copy() {
+        return new NeuralNet(iNodes, hNodes, oNodes, hLayers, id, Arrays.copyOfRange(genome, base, base + length()), 0);
+    }
+
+    void copyInto(NeuralNet target) {
+        System.arraycopy(genome, base, target.genome, target.base, length());
+    }
+
+    void load(float[] source) {
+        System.arraycopy(source, 0, genome, base, length());
+    }
 
-        return clone;
+    float[] genomeCopy() {
+        return Arrays.copyOfRange(genome, base, base + length());
     }
 
     String toJson() {
-        return new Gson().toJson(this);
+        // A view would drag the whole shared buffer along
+        NeuralNet standalone = base == 0 && genome.length == length() ? this : copy();
+        return new Gson().toJson(standalone);
     }
 
     static NeuralNet fromJson(String json) {
-        return new Gson().fromJson(json, NeuralNet.class);
+        NeuralNet neuralNet = new Gson().fromJson(json, NeuralNet.class);
+        if (neuralNet.genome == null) {
+            neuralNet.genome = flatten(neuralNet.weights);
+            neuralNet.weights = null;
+        }
+        return neuralNet;
+    }
+
+    /**
+     * Little endian: magic, version, the four layer sizes, the id and then the genome as floats.
+     */
+    byte[] toBinary() {
+        byte[] idBytes = id == null ? new byte[0] : id.getBytes(StandardCharsets.UTF_8);
+        int length = length();
+        ByteBuffer buffer = ByteBuffer.allocate(7 * Integer.BYTES + idBytes.length + length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(BRAIN_MAGIC)
+                .putInt(BRAIN_VERSION)
+                .putInt(iNodes)
+                .putInt(hNodes)
+                .putInt(oNodes)
+                .putInt(hLayers)
+                .putInt(idBytes.length)
+                .put(idBytes);
+        buffer.asFloatBuffer().put(genome, base, length);
+        return buffer.array();
+    }
+
+    static NeuralNet fromBinary(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != BRAIN_MAGIC || buffer.getInt() != BRAIN_VERSION) {
+            throw new IllegalArgumentException("Not a binary brain");
+        }
+        int input = buffer.getInt();
+        int hidden = buffer.getInt();
+        int output = buffer.getInt();
+        int hiddenLayers = buffer.getInt();
+        byte[] idBytes = new byte[buffer.getInt()];
+        buffer.get(idBytes);
+        float[] genome = new float[genomeLength(input, hidden, output, hiddenLayers)];
+        buffer.asFloatBuffer().get(genome);
+        return view(input, hidden, output, hiddenLayers, new String(idBytes, StandardCharsets.UTF_8), genome, 0);
+    }
+
+    /**
+     * Reads a brain saved as .brain or as JSON.
+     */
+    @SneakyThrows
+    public static NeuralNet read(Path file) {
+        byte[] bytes = Files.readAllBytes(file);
+        if (file.getFileName().toString().endsWith(BrainWriter.BINARY_EXTENSION)) {
+            return fromBinary(bytes);
+        }
+        return fromJson(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static float[] flatten(Matrix[] weights) {
+        int length = 0;
+        for (Matrix matrix : weights) {
+            length += matrix.getRows() * matrix.getCols();
+        }
+        float[] genome = new float[length];
+        int pos = 0;
+        for (Matrix matrix : weights) {
+            for (double value : matrix.toArray()) {
+                genome[pos++] = (float)value;
+            }
+        }
+        return genome;
+    }
+
+    private Matrix[] toMatrices() {
+        int[] offsets = offsets();
+        Matrix[] matrices = new Matrix[hLayers + 1];
+        for (int layer = 0; layer <= hLayers; layer++) {
+            int cols = cols(layer);
+            double[][] matrix = new double[rows(layer)][cols];
+            for (int i = 0; i < matrix.length; i++) {
+                for (int j = 0; j < cols; j++) {
+                    matrix[i][j] = genome[base + offsets[layer] + i * cols + j];
+                }
+            }
+            matrices[layer] = new Matrix(matrix);
+        }
+        return matrices;
     }
 
     public NeuralNetDebugInfo getDebugInfo() {
@@ -85,7 +348,7 @@ public class NeuralNet {
                 .hNodes(hNodes)
                 .iNodes(iNodes)
                 .oNodes(oNodes)
-                .weights(weights)
+                .weights(toMatrices())
                 .build();
     }
 }
@@ -1,147 +1,175 @@
 package nl.pvanassen.raceai.ai;
 
-import com.google.common.collect.Lists;
+import lombok.Getter;
 import lombok.SneakyThrows;
+import nl.pvanassen.raceai.CarStates;
 import nl.pvanassen.raceai.Global;
 import nl.pvanassen.raceai.Track;
+import nl.pvanassen.raceai.metrics.GenerationEvent;
+import nl.pvanassen.raceai.metrics.Metrics;
 
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.Comparator;
-import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
-import static java.util.Comparator.comparing;
-import static java.util.stream.Collectors.toList;
 
 public class Population {
 
-    private final List<CarAI> cars;
+    private static final ThreadLocal<CounterRandom> RANDOM = ThreadLocal.withInitial(() -> new CounterRandom(0));
 
-    private CarAI bestCar;
+    private final PopulationArena arena;
+
+    private final SelectionStrategy selectionStrategy;
+
+    private final CarStates states;
+
+    private long seed;
+
+    private final ForkJoinPool pool;
+
+    private final BrainWriter brainWriter;
+
+    // Put in front of the names of saved brains, null for none
+    private final String name;
+
+    private NeuralNet bestBrain;
+
+    private String bestId;
 
     private int bestScore = 0;
     private int gen = 0;
 
     private double bestFitness = 0;
 
+    // Fitness of the best car of the last generation that was evaluated
+    @Getter
+    private double generationBestFitness = 0;
+
     private int roundsWithNoFitnessIncrease = 0;
 
+    // Breeding parameters of the last natural selection
+    @Getter
+    private float mutationRate;
+
+    @Getter
+    private int takeTop;
+
     public Population(Track track, int size) {
-        cars = new ArrayList<>(size);
-        for (int i = 0; i < size; i++) {
-            cars.add(new CarAI(track::createCar));
-        }
+        this(track, size, new RouletteSelection());
     }
 
-    public boolean done() {
-        // Skip best car
-        for (CarAI car : cars.subList(1, cars.size())) {
-            if (car.isAlive()) {
-                return false;
-            }
-        }
-        return true;
+    public Population(Track track, int size, SelectionStrategy selectionStrategy) {
+        this(track, size, selectionStrategy, ThreadLocalRandom.current().nextLong());
     }
 
-    @SneakyThrows
-    public void tick() {
-        List<CarAI> aliveCars =  cars.stream()
-                .filter(CarAI::isAlive)
-                .collect(toList());
-        if (cars.isEmpty()) {
-            return;
-        }
-
-        int partitionSize = Math.max(1, (int)Math.ceil(aliveCars.size() / (float)Runtime.getRuntime().availableProcessors()));
-        List<ForkJoinTask<?>> tasks = Lists.partition(aliveCars, partitionSize)
-                .stream()
-                .map(Task::new)
-                .map(Global.POOL::submit)
-                .collect(toList());
-
-        for (ForkJoinTask<?> task : tasks) {
-            task.join();
-        }
+    /**
+     * All random choices of the population come from streams keyed by the seed, the generation and the child,
+     * so the same seed trains the same cars however the breeding threads are scheduled.
+     */
+    public Population(Track track, int size, SelectionStrategy selectionStrategy, long seed) {
+        this(track, size, selectionStrategy, seed, Global.POOL);
     }
 
-    public CarAI getRandomCar() {
-        return cars.get(ThreadLocalRandom.current().nextInt(cars.size())).cloneForReplay();
+    /**
+     * A population that breeds in the given pool.
+     */
+    public Population(Track track, int size, SelectionStrategy selectionStrategy, long seed, ForkJoinPool pool) {
+        this(track, size, selectionStrategy, seed, pool, null, Global.BRAIN_RETENTION);
     }
 
-    static class Task implements Runnable {
-        private final List<CarAI> cars;
+    /**
+     * A named population, whose saved brains start with its name so populations can save side by side. Only the
+     * last brainRetention saves of this population are kept.
+     */
+    public Population(Track track, int size, SelectionStrategy selectionStrategy, long seed, ForkJoinPool pool,
+                      String name, int brainRetention) {
+        this.name = name;
+        this.brainWriter = new BrainWriter(brainRetention);
+        this.seed = seed;
+        this.pool = pool;
+        arena = new PopulationArena(track, size, seed);
+        this.selectionStrategy = selectionStrategy;
+        this.states = track.getCarStates();
+    }
 
-        Task(List<CarAI> cars) {
-            this.cars = cars;
-        }
+    public boolean done() {
+        // Skip best car, it drives in slot 0
+        int alive = states.getAliveCount();
+        return alive == 0 || (alive == 1 && states.aliveSlot(0) == 0);
+    }
 
-        @Override
-        public void run() {
-            try {
-                cars.forEach(CarAI::calculate);
-            }
-            catch (RuntimeException e) {
-                e.printStackTrace();
-            }
-        }
+    /**
+     * Lets the car in the given slot decide on its next action. Called by the track for every car that is still
+     * driving, right after it was sensed.
+     */
+    public void drive(int slot) {
+        arena.active()[slot].calculate();
     }
 
-    public Optional<CarAI> getBest() {
-        return getBest(false);
+    public void saveBest() {
+        updateBest(false);
+        if (bestBrain != null) {
+            brainWriter.save(name == null ? bestId : name + "-" + bestId, bestBrain);
+        }
     }
 
-    public Optional<CarAI> getBest(boolean reevaluateRoundsWithNoFitnessIncrease) {
+    private void updateBest(boolean reevaluateRoundsWithNoFitnessIncrease) {
+        CarAI[] cars = arena.active();
         double max = 0;
         int maxIndex = 0;
-        for (int i = 0; i < cars.size(); i++) {
-            double fitness = cars.get(i).calculateFitness();
+        for (int i = 0; i < cars.length; i++) {
+            double fitness = cars[i].calculateFitness();
             if (fitness > max) {
                 max = fitness;
                 maxIndex = i;
             }
         }
+        generationBestFitness = max;
         System.out.println("Best score global: " + bestFitness);
         System.out.println("Best score population: " + max);
         if (max > bestFitness) {
             bestFitness = max;
-            bestScore = (int)cars.get(maxIndex).getScore();
-            bestCar = cars.get(maxIndex);
+            bestScore = (int)cars[maxIndex].getScore();
+            // The arena overwrites this genome soon, keep a copy of it
+            if (bestBrain == null) {
+                bestBrain = cars[maxIndex].getBrain().copy();
+            }
+            else {
+                cars[maxIndex].getBrain().copyInto(bestBrain);
+            }
+            bestId = cars[maxIndex].getId();
             if (reevaluateRoundsWithNoFitnessIncrease) {
                 roundsWithNoFitnessIncrease = 0;
                 System.out.println("Fitness increase!");
             }
-            System.out.println("New best car: " + bestCar.getId());
+            System.out.println("New best car: " + bestId);
         }
         else if (reevaluateRoundsWithNoFitnessIncrease) {
             System.out.println("No fitness increase");
             roundsWithNoFitnessIncrease++;
         }
-        return Optional.ofNullable(bestCar)
-                .map(CarAI::cloneForReplay);
-    }
-
-    private CarAI selectRandomParent(List<CarAI> cars) {  //selects a random number in range of the fitnesssum and if a car falls in that range then select it
-        double rand = ThreadLocalRandom.current().nextDouble() * calculateFitnessSum();
-        float summation = 0;
-        for (CarAI car : cars) {
-            summation += car.calculateFitness();
-            if (summation > rand) {
-                return car;
-            }
-        }
-        return cars.get(0);
     }
 
     @SneakyThrows
     public void naturalSelection() {
+        GenerationEvent event = new GenerationEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long brains = NeuralNet.created();
 
-        List<CarAI> newCars = new ArrayList<>(cars.size());
+        CarAI[] cars = arena.active();
+        CarAI[] children = arena.inactive();
 
-        newCars.add(getBest(true)
-                .orElseGet(this::getRandomCar));
+        updateBest(true);
+        if (bestBrain != null) {
+            bestBrain.copyInto(children[0].getBrain());
+        }
+        else {
+            CounterRandom random = RANDOM.get().key(seed, gen, 0);
+            cars[random.nextInt(cars.length)].getBrain().copyInto(children[0].getBrain());
+        }
 
         int takeTop;
         float mutationRate;
@@ -162,46 +190,149 @@ public class Population {
             mutationRate = 0.01f;
         }
 
-        List<CarAI> carsToSelectFrom = cars.stream()
-                .sorted(comparing(CarAI::calculateFitness).reversed())
-                .limit((int) (cars.size() * (takeTop / 100f)))
-                .collect(toList());;
+        if (event.isEnabled()) {
+            // Only worth sorting the fitness when someone is recording
+            GenerationStatistics statistics = GenerationStatistics.of(cars);
+            event.bestFitness = statistics.getFitnessMax();
+            event.meanFitness = statistics.getFitnessMean();
+            event.medianFitness = statistics.getFitnessMedian();
+        }
+        this.mutationRate = mutationRate;
+        this.takeTop = takeTop;
 
         System.out.println("Mutation rate: " + mutationRate);
         System.out.println("Using top : " + takeTop + "%");
 
-        ForkJoinTask<List<CarAI>> forkJoinTask = Global.POOL.submit(() -> IntStream.rangeClosed(1, cars.size() - 1)
-                .parallel()
-                .mapToObj(it -> selectRandomParent(carsToSelectFrom).crossoverAndMutate(selectRandomParent(carsToSelectFrom), mutationRate))
-                .collect(toList()));
-
-        newCars.addAll(forkJoinTask.get());
+        SelectionStrategy.Selector selection = selectionStrategy.prepare(cars, takeTop);
 
-//        for (int i = 1; i < cars.size(); i++) {
-//            CarAI child = selectRandomParent(cars).crossoverAndMutate(selectRandomParent(cars), mutationRate);
-//            newCars.add(child);
-//        }
-
-        cars.clear();
-        cars.addAll(newCars);
+        // Children are bred straight into the inactive half of the arena
+        pool.submit(() -> IntStream.range(1, cars.length)
+                .parallel()
+                .forEach(it -> {
+                    CounterRandom random = RANDOM.get().key(seed, gen, it);
+                    selection.select(random).getBrain()
+                            .crossoverAndMutateInto(selection.select(random).getBrain(), mutationRate, children[it].getBrain(), random);
+                }))
+                .get();
+
+        arena.swap();
+        event.end();
+        if (event.shouldCommit()) {
+            event.generation = gen;
+            event.populationSize = cars.length;
+            event.mutationRate = mutationRate;
+            event.takeTop = takeTop;
+            event.commit();
+        }
         gen += 1;
+        Metrics.SELECTION.record(System.nanoTime() - start);
+
+        System.out.println("Generation turnover took " + (System.nanoTime() - start) / 1_000_000 + " ms, new brains: " + (NeuralNet.created() - brains));
     }
 
-//    public void mutate() {
-//        for (Snake snake : snakes) {
-//            snake.mutate();
-//        }
-//    }
+    /**
+     * Statistics of the generation that just drove. Call it before {@link #naturalSelection()}, which replaces
+     * that generation.
+     */
+    public GenerationStatistics statistics() {
+        return GenerationStatistics.of(arena.active());
+    }
 
     public double calculateFitnessSum() {  //calculate the sum of all the snakes fitnesses
         double fitnessSum = 0;
-        for (CarAI car : cars) {
+        for (CarAI car : arena.active()) {
             fitnessSum += car.calculateFitness();
         }
         return fitnessSum;
     }
 
+    /**
+     * Writes the generation that is about to drive, so call it between {@link #naturalSelection()} and the next tick.
+     */
+    public void checkpoint(Path file, boolean compress) {
+        long start = System.nanoTime();
+        new PopulationCheckpoint(arena.size(), CarAI.genomeLength(), gen, seed, bestFitness, bestScore,
+                roundsWithNoFitnessIncrease, bestId, bestBrain == null ? null : bestBrain.genomeCopy(), arena.activeGenomes())
+                .write(file, compress);
+        System.out.println("Checkpoint of generation " + gen + " written to " + file + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Continues from a checkpoint of a population of the same size. Call it before the first tick.
+     */
+    public void resume(Path file) {
+        long start = System.nanoTime();
+        PopulationCheckpoint checkpoint = PopulationCheckpoint.read(file, arena.size(), CarAI.genomeLength(), arena.activeGenomes());
+        gen = checkpoint.generation;
+        seed = checkpoint.seed;
+        bestFitness = checkpoint.bestFitness;
+        bestScore = checkpoint.bestScore;
+        roundsWithNoFitnessIncrease = checkpoint.roundsWithNoFitnessIncrease;
+        bestId = checkpoint.bestId;
+        bestBrain = checkpoint.bestGenome == null ? null : CarAI.brainView(checkpoint.bestGenome, 0, "net-" + bestId);
+        System.out.println("Resumed generation " + gen + " from " + file + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * The genomes of the generation that is about to drive, slot after slot. Distributed training sends these to
+     * workers instead of driving the cars on the local track.
+     */
+    public float[] genomes() {
+        return arena.activeGenomes();
+    }
+
+    /**
+     * Takes the scores of the current generation from elsewhere, after which every car counts as stopped.
+     */
+    public void evaluated(double[] scores) {
+        CarAI[] cars = arena.active();
+        for (int slot = 0; slot < cars.length; slot++) {
+            cars[slot].getCar().stopped(scores[slot]);
+        }
+    }
+
+    /**
+     * Copies of the genomes of the fittest cars of the generation that just drove. Call it before
+     * {@link #naturalSelection()}, which replaces that generation.
+     */
+    public float[][] emigrants(int count) {
+        CarAI[] cars = arena.active();
+        int[] fittest = IntStream.range(0, cars.length)
+                .boxed()
+                .sorted(Comparator.comparingDouble((Integer slot) -> cars[slot].calculateFitness()).reversed())
+                .limit(count)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        float[][] genomes = new float[fittest.length][];
+        for (int i = 0; i < fittest.length; i++) {
+            genomes[i] = cars[fittest[i]].getBrain().genomeCopy();
+        }
+        return genomes;
+    }
+
+    /**
+     * Puts genomes from another population in the last slots of the generation that is about to drive. The elite in
+     * slot 0 is never replaced.
+     */
+    public void immigrate(float[][] genomes) {
+        CarAI[] cars = arena.active();
+        for (int i = 0; i < genomes.length && cars.length - 1 - i > 0; i++) {
+            cars[cars.length - 1 - i].getBrain().load(genomes[i]);
+        }
+    }
+
+    /**
+     * Waits until every queued brain is on disk.
+     */
+    public void close() {
+        brainWriter.close();
+    }
+
+    public int getGeneration() {
+        return gen;
+    }
+
     public CarAI getFirstCar() {
-        return cars.get(0);
+        return arena.active()[0];
     }
 }
@@ -0,0 +1,75 @@
+package nl.pvanassen.raceai.ai;
+
+import nl.pvanassen.raceai.Car;
+import nl.pvanassen.raceai.Track;
+
+import static nl.pvanassen.raceai.CarType.createNormal;
+
+/**
+ * Genomes and cars for two generations, allocated once. The active generation drives while the next one is bred into
+ * the inactive buffer, after which the two swap. Both generations share the car slots on the track, and the index of
+ * a car in a generation is its slot.
+ */
+class PopulationArena {
+
+    private final int size;
+
+    private final CarAI[][] generations = new CarAI[2][];
+
+    private final float[][] genomes;
+
+    private int active = 0;
+
+    PopulationArena(Track track, int size, long seed) {
+        this.size = size;
+        int genomeLength = CarAI.genomeLength();
+        for (int generation = 0; generation < 2; generation++) {
+            generations[generation] = new CarAI[size];
+        }
+        genomes = new float[2][size * genomeLength];
+        CounterRandom random = new CounterRandom(seed);
+        for (int slot = 0; slot < size; slot++) {
+            String id = "CarAI-" + slot;
+            Car car = track.createCar(createNormal(id));
+            if (car.getSlot() != slot) {
+                throw new IllegalStateException("A population needs a track of its own");
+            }
+            for (int generation = 0; generation < 2; generation++) {
+                NeuralNet brain = CarAI.brainView(genomes[generation], slot * genomeLength, "net-" + car.getId());
+                generations[generation][slot] = new CarAI(car, brain, id);
+            }
+            // Generation -1, before any breeding
+            generations[active][slot].getBrain().randomize(random.key(seed, -1, slot));
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    CarAI[] active() {
+        return generations[active];
+    }
+
+    /**
+     * The genomes of all brains of the active generation, slot after slot.
+     */
+    float[] activeGenomes() {
+        return genomes[active];
+    }
+
+    CarAI[] inactive() {
+        return generations[1 - active];
+    }
+
+    /**
+     * Makes the bred generation active and puts its cars back on the start line. Slot 0 holds the best car.
+     */
+    void swap() {
+        active = 1 - active;
+        CarAI[] cars = generations[active];
+        for (int slot = 0; slot < size; slot++) {
+            cars[slot].recycle(slot == 0);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package nl.pvanassen.raceai.ai;
+
+import lombok.SneakyThrows;
+
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Everything needed to continue training where it stopped: the genomes of the generation that is about to drive,
+ * the best brain so far and the counters of the mutation schedule. The random streams are keyed by seed and
+ * generation, so the seed is all the random state there is.
+ *
+ * <p>The file is a fixed little endian header followed by the best genome and all genomes as floats. The part after
+ * the header can be gzipped; an uncompressed file is read through a memory mapping. A new checkpoint is written next
+ * to the old one and renamed over it, so a preempted run always leaves a complete file behind.</p>
+ */
+class PopulationCheckpoint {
+
+    private static final int MAGIC = 0x52414350;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 128;
+
+    private static final int MAX_ID_BYTES = HEADER_SIZE - 49;
+
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final int FLAG_HAS_BEST = 2;
+
+    private static final int CHUNK_FLOATS = 256 * 1024;
+
+    final int populationSize;
+
+    final int genomeLength;
+
+    final int generation;
+
+    final long seed;
+
+    final double bestFitness;
+
+    final int bestScore;
+
+    final int roundsWithNoFitnessIncrease;
+
+    // Null when no car scored yet
+    final String bestId;
+
+    final float[] bestGenome;
+
+    final float[] genomes;
+
+    PopulationCheckpoint(int populationSize, int genomeLength, int generation, long seed, double bestFitness, int bestScore,
+                         int roundsWithNoFitnessIncrease, String bestId, float[] bestGenome, float[] genomes) {
+        this.populationSize = populationSize;
+        this.genomeLength = genomeLength;
+        this.generation = generation;
+        this.seed = seed;
+        this.bestFitness = bestFitness;
+        this.bestScore = bestScore;
+        this.roundsWithNoFitnessIncrease = roundsWithNoFitnessIncrease;
+        this.bestId = bestId;
+        this.bestGenome = bestGenome;
+        this.genomes = genomes;
+    }
+
+    @SneakyThrows
+    void write(Path file, boolean compress) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            ByteBuffer header = header(compress);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            if (compress) {
+                try (GZIPOutputStream out = new GZIPOutputStream(Channels.newOutputStream(channel), 64 * 1024)) {
+                    writeFloats(bestGenome, bytes -> out.write(bytes.array(), 0, bytes.limit()));
+                    writeFloats(genomes, bytes -> out.write(bytes.array(), 0, bytes.limit()));
+                    // Closing the stream closes the channel, so force the trailer to disk first
+                    out.finish();
+                    channel.force(false);
+                }
+            }
+            else {
+                writeFloats(bestGenome, bytes -> {
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                });
+                writeFloats(genomes, bytes -> {
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                });
+                channel.force(false);
+            }
+        }
+        Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private ByteBuffer header(boolean compress) {
+        byte[] id = bestId == null ? new byte[0] : bestId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("Id of the best car is too long for a checkpoint: " + bestId);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt((compress ? FLAG_COMPRESSED : 0) | (bestGenome != null ? FLAG_HAS_BEST : 0));
+        header.putInt(populationSize);
+        header.putInt(genomeLength);
+        header.putInt(generation);
+        header.putLong(seed);
+        header.putDouble(bestFitness);
+        header.putInt(bestScore);
+        header.putInt(roundsWithNoFitnessIncrease);
+        header.put((byte) id.length);
+        header.put(id);
+        header.clear();
+        return header;
+    }
+
+    private interface ChunkWriter {
+        void write(ByteBuffer bytes) throws Exception;
+    }
+
+    private static void writeFloats(float[] values, ChunkWriter writer) throws Exception {
+        if (values == null) {
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(CHUNK_FLOATS * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int from = 0; from < values.length; from += CHUNK_FLOATS) {
+            int count = Math.min(CHUNK_FLOATS, values.length - from);
+            bytes.clear();
+            bytes.asFloatBuffer().put(values, from, count);
+            bytes.limit(count * Float.BYTES);
+            writer.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a checkpoint of the given population and genome size, with the genomes going straight into the given
+     * buffer.
+     */
+    @SneakyThrows
+    static PopulationCheckpoint read(Path file, int expectedPopulationSize, int expectedGenomeLength, float[] genomes) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IllegalStateException("Checkpoint " + file + " is truncated");
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalStateException(file + " is not a population checkpoint");
+            }
+            int flags = header.getInt();
+            int populationSize = header.getInt();
+            int genomeLength = header.getInt();
+            int generation = header.getInt();
+            long seed = header.getLong();
+            double bestFitness = header.getDouble();
+            int bestScore = header.getInt();
+            int roundsWithNoFitnessIncrease = header.getInt();
+            byte[] id = new byte[header.get()];
+            header.get(id);
+            if (populationSize != expectedPopulationSize || genomeLength != expectedGenomeLength) {
+                throw new IllegalStateException("Checkpoint " + file + " holds " + populationSize + " genomes of length "
+                        + genomeLength + ", expected " + expectedPopulationSize + " of length " + expectedGenomeLength);
+            }
+
+            float[] bestGenome = (flags & FLAG_HAS_BEST) != 0 ? new float[genomeLength] : null;
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                try (DataInputStream in = new DataInputStream(new GZIPInputStream(Channels.newInputStream(channel), 64 * 1024))) {
+                    readFloats(in, bestGenome);
+                    readFloats(in, genomes);
+                }
+            }
+            else {
+                long size = (long) ((bestGenome == null ? 0 : genomeLength) + genomes.length) * Float.BYTES;
+                ByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size).order(ByteOrder.LITTLE_ENDIAN);
+                if (bestGenome != null) {
+                    body.asFloatBuffer().get(bestGenome);
+                    body.position(genomeLength * Float.BYTES);
+                }
+                body.asFloatBuffer().get(genomes, 0, populationSize * genomeLength);
+            }
+            return new PopulationCheckpoint(populationSize, genomeLength, generation, seed, bestFitness, bestScore,
+                    roundsWithNoFitnessIncrease, bestGenome == null ? null : new String(id, StandardCharsets.UTF_8),
+                    bestGenome, genomes);
+        }
+    }
+
+    private static void readFloats(DataInputStream in, float[] values) throws Exception {
+        if (values == null) {
+            return;
+        }
+        byte[] chunk = new byte[CHUNK_FLOATS * Float.BYTES];
+        ByteBuffer bytes = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+        for (int from = 0; from < values.length; from += CHUNK_FLOATS) {
+            int count = Math.min(CHUNK_FLOATS, values.length - from);
+            in.readFully(chunk, 0, count * Float.BYTES);
+            bytes.clear();
+            bytes.asFloatBuffer().get(values, from, count);
+        }
+    }
+}
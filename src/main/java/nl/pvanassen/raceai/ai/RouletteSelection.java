@@ -0,0 +1,29 @@
+package nl.pvanassen.raceai.ai;
+
+import lombok.ToString;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Fitness proportionate selection among the top takeTop percent, found by sorting the population.
+ */
+@ToString
+class RouletteSelection implements SelectionStrategy {
+
+    @Override
+    public Selector prepare(CarAI[] cars, int takeTop) {
+        List<CarAI> carsToSelectFrom = Arrays.stream(cars)
+                .sorted(comparing(CarAI::calculateFitness).reversed())
+                .limit((int) (cars.length * (takeTop / 100f)))
+                .collect(toList());
+        double fitnessSum = 0;
+        for (CarAI car : cars) {
+            fitnessSum += car.calculateFitness();
+        }
+        return new FitnessProportionateSelection(carsToSelectFrom, fitnessSum);
+    }
+}
@@ -0,0 +1,40 @@
+package nl.pvanassen.raceai.ai;
+
+import nl.pvanassen.raceai.TrainingConfiguration;
+
+import java.util.Random;
+
+/**
+ * How parents are picked from a finished generation.
+ */
+public interface SelectionStrategy {
+
+    /**
+     * Called once per generation, before any parent is drawn. takeTop is the share of the population, in percent,
+     * that the current mutation schedule wants to breed from; strategies are free to use their own pressure instead.
+     */
+    Selector prepare(CarAI[] cars, int takeTop);
+
+    interface Selector {
+
+        /**
+         * Draws one parent. Called concurrently from the breeding threads.
+         */
+        CarAI select(Random random);
+    }
+
+    static SelectionStrategy of(TrainingConfiguration configuration) {
+        switch (configuration.getSelection()) {
+            case "roulette":
+                return new RouletteSelection();
+            case "tournament":
+                return new TournamentSelection(configuration.getTournamentSize());
+            case "rank":
+                return new LinearRankSelection(configuration.getRankPressure());
+            case "truncation":
+                return new TruncationSelection();
+            default:
+                throw new IllegalArgumentException("Unknown selection strategy " + configuration.getSelection());
+        }
+    }
+}
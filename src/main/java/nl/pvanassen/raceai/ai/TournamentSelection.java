@@ -0,0 +1,33 @@
+package nl.pvanassen.raceai.ai;
+
+import lombok.ToString;
+
+/**
+ * The fittest of a few cars drawn at random. Needs no preparation, so parents can be drawn in parallel right away.
+ */
+@ToString
+class TournamentSelection implements SelectionStrategy {
+
+    private final int size;
+
+    TournamentSelection(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Tournament size must be at least 1");
+        }
+        this.size = size;
+    }
+
+    @Override
+    public Selector prepare(CarAI[] cars, int takeTop) {
+        return random -> {
+            CarAI winner = cars[random.nextInt(cars.length)];
+            for (int i = 1; i < size; i++) {
+                CarAI contender = cars[random.nextInt(cars.length)];
+                if (contender.calculateFitness() > winner.calculateFitness()) {
+                    winner = contender;
+                }
+            }
+            return winner;
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package nl.pvanassen.raceai.ai;
+
+import lombok.ToString;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Uniform choice among the top takeTop percent. The cut-off fitness is found with a quickselect, so the population
+ * is never sorted.
+ */
+@ToString
+class TruncationSelection implements SelectionStrategy {
+
+    private double[] fitness = new double[0];
+
+    private int[] selected = new int[0];
+
+    @Override
+    public Selector prepare(CarAI[] cars, int takeTop) {
+        if (fitness.length != cars.length) {
+            fitness = new double[cars.length];
+            selected = new int[cars.length];
+        }
+        for (int i = 0; i < cars.length; i++) {
+            fitness[i] = cars[i].calculateFitness();
+        }
+        int keep = Math.max(1, (int) (cars.length * (takeTop / 100f)));
+        double threshold = kthLargest(fitness, keep);
+
+        int count = 0;
+        for (int i = 0; i < cars.length && count < keep; i++) {
+            if (cars[i].calculateFitness() > threshold) {
+                selected[count++] = i;
+            }
+        }
+        for (int i = 0; i < cars.length && count < keep; i++) {
+            if (cars[i].calculateFitness() == threshold) {
+                selected[count++] = i;
+            }
+        }
+        int[] selected = this.selected;
+        int size = count;
+        return random -> cars[selected[random.nextInt(size)]];
+    }
+
+    /**
+     * Hoare's quickselect, reorders values in place.
+     */
+    private static double kthLargest(double[] values, int k) {
+        int target = values.length - k;
+        int low = 0;
+        int high = values.length - 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (low < high) {
+            double pivot = values[low + random.nextInt(high - low + 1)];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double swap = values[i];
+                    values[i] = values[j];
+                    values[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (target <= j) {
+                high = j;
+            }
+            else if (target >= i) {
+                low = i;
+            }
+            else {
+                return values[target];
+            }
+        }
+        return values[target];
+    }
+}
@@ -0,0 +1,20 @@
+package nl.pvanassen.raceai.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.pvanassen.raceai.BrainSave")
+@Label("Brain Save")
+@Category("Race AI")
+public class BrainSaveEvent extends Event {
+
+    @Label("Name")
+    public String name;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+}
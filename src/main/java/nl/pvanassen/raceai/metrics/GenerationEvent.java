@@ -0,0 +1,38 @@
+package nl.pvanassen.raceai.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+
+@Name("nl.pvanassen.raceai.Generation")
+@Label("Generation")
+@Category("Race AI")
+@Description("Generation boundary: the fitness of the generation that drove and the breeding of the next one")
+public class GenerationEvent extends Event {
+
+    @Label("Generation")
+    public int generation;
+
+    @Label("Population Size")
+    public int populationSize;
+
+    @Label("Best Fitness")
+    public double bestFitness;
+
+    @Label("Mean Fitness")
+    public double meanFitness;
+
+    @Label("Median Fitness")
+    public double medianFitness;
+
+    @Label("Mutation Rate")
+    @Percentage
+    public float mutationRate;
+
+    @Label("Take Top")
+    @Description("Share of the population parents are drawn from, in percent")
+    public int takeTop;
+}
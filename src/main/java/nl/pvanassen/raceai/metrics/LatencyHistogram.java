@@ -0,0 +1,142 @@
+package nl.pvanassen.raceai.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of nanosecond latencies. Buckets are exact below 16 ns and then split every power of two in
+ * eight, so a percentile is off by at most an eighth. Recording is a few atomic adds; the metrics logger turns the
+ * counts into a snapshot and starts a new interval.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BUCKETS = 8;
+
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+
+    private static final int BUCKETS = LINEAR + (64 - 4) * SUB_BUCKETS;
+
+    @Getter
+    private final String name;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    private volatile Snapshot last = new Snapshot(0, 0, 0, 0, 0);
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < LINEAR) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - 3);
+    }
+
+    /**
+     * Ends the current interval. Recordings that race with this call end up in either interval.
+     */
+    Snapshot rollOver() {
+        long[] interval = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            interval[i] = counts.getAndSet(i, 0);
+            count += interval[i];
+        }
+        long sum = total.getAndSet(0);
+        long highest = max.getAndSet(0);
+        Snapshot snapshot = new Snapshot(count, count == 0 ? 0 : sum / (double) count,
+                percentile(interval, count, 0.5), percentile(interval, count, 0.99), highest);
+        last = snapshot;
+        return snapshot;
+    }
+
+    private static long percentile(long[] interval, long count, double percentile) {
+        long rank = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += interval[i];
+            if (seen >= rank && seen > 0) {
+                return lowerBound(i);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public long getCount() {
+        return last.count;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return last.mean / 1000;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return last.p50 / 1000d;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return last.p99 / 1000d;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return last.max / 1000d;
+    }
+
+    static class Snapshot {
+        final long count;
+
+        final double mean;
+
+        final long p50;
+
+        final long p99;
+
+        final long max;
+
+        Snapshot(long count, double mean, long p50, long p99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50=%.1fus p99=%.1fus max=%.1fus n=%d", p50 / 1000d, p99 / 1000d, max / 1000d, count);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package nl.pvanassen.raceai.metrics;
+
+/**
+ * Latencies of one phase over the last completed metrics interval.
+ */
+public interface LatencyHistogramMXBean {
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,144 @@
+package nl.pvanassen.raceai.metrics;
+
+import lombok.NoArgsConstructor;
+import nl.pvanassen.raceai.Global;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * In process metrics of the training loop. Histograms are registered as nl.pvanassen.raceai:type=Phase MBeans and the
+ * gauges as nl.pvanassen.raceai:type=Training. Every -Draceai.metricsLogInterval seconds (30 by default, 0 for never)
+ * the histograms start a new interval and one line with all of them is logged; the MBeans show the last interval.
+ *
+ * <p>Sensing, collision, inference and action run per car inside the fused tick. They are timed for the cars that
+ * {@link #sampled(int)} picks only, so the clock is read for one car in 64.</p>
+ */
+@NoArgsConstructor(access = PRIVATE)
+public class Metrics {
+
+    private static final int SAMPLE_MASK = 63;
+
+    private static final List<LatencyHistogram> HISTOGRAMS = new ArrayList<>();
+
+    public static final LatencyHistogram TICK = histogram("tick");
+
+    public static final LatencyHistogram SENSING = histogram("sensing");
+
+    public static final LatencyHistogram COLLISION = histogram("collision");
+
+    public static final LatencyHistogram INFERENCE = histogram("inference");
+
+    public static final LatencyHistogram ACTION = histogram("action");
+
+    public static final LatencyHistogram RENDERING = histogram("rendering");
+
+    public static final LatencyHistogram SELECTION = histogram("selection");
+
+    public static final LatencyHistogram GENERATION = histogram("generation");
+
+    private static final Gauges GAUGES = new Gauges();
+
+    static {
+        try {
+            for (LatencyHistogram histogram : HISTOGRAMS) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(histogram,
+                        new ObjectName("nl.pvanassen.raceai:type=Phase,name=" + histogram.getName()));
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GAUGES, new ObjectName("nl.pvanassen.raceai:type=Training"));
+        }
+        catch (Exception e) {
+            // A second class loader in the same JVM, the first one owns the names
+            System.out.println("Metrics not registered with JMX: " + e);
+        }
+        if (Global.METRICS_LOG_INTERVAL > 0) {
+            ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-logger");
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.scheduleAtFixedRate(Metrics::log, Global.METRICS_LOG_INTERVAL, Global.METRICS_LOG_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    private static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = new LatencyHistogram(name);
+        HISTOGRAMS.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * Whether the per car phases of the car in this slot are timed.
+     */
+    public static boolean sampled(int slot) {
+        return (slot & SAMPLE_MASK) == 0;
+    }
+
+    /**
+     * Adds the change in live cars of one track, so the gauge is the sum over every track in the process.
+     */
+    public static void liveCarsChanged(int change) {
+        GAUGES.liveCars.add(change);
+    }
+
+    public static void sensorCacheHitRatio(DoubleSupplier hitRatio) {
+        GAUGES.sensorCacheHitRatio = hitRatio;
+    }
+
+    public static void generation(long wallNanos) {
+        GENERATION.record(wallNanos);
+        GAUGES.generations.incrementAndGet();
+        GAUGES.lastGenerationWallNanos = wallNanos;
+    }
+
+    private static void log() {
+        StringBuilder line = new StringBuilder("Metrics:");
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            line.append(' ').append(histogram.getName()).append(" [").append(histogram.rollOver()).append(']');
+        }
+        line.append(" live cars=").append(GAUGES.getLiveCars())
+                .append(String.format(" sensor cache hit ratio=%.3f", GAUGES.getSensorCacheHitRatio()))
+                .append(" generations=").append(GAUGES.getGenerations());
+        System.out.println(line);
+    }
+
+    private static class Gauges implements TrainingMXBean {
+        private final LongAdder liveCars = new LongAdder();
+
+        private volatile DoubleSupplier sensorCacheHitRatio = () -> Double.NaN;
+
+        private final AtomicLong generations = new AtomicLong();
+
+        private volatile long lastGenerationWallNanos;
+
+        @Override
+        public int getLiveCars() {
+            return liveCars.intValue();
+        }
+
+        @Override
+        public double getSensorCacheHitRatio() {
+            return sensorCacheHitRatio.getAsDouble();
+        }
+
+        @Override
+        public long getGenerations() {
+            return generations.get();
+        }
+
+        @Override
+        public double getLastGenerationWallMillis() {
+            return lastGenerationWallNanos / 1_000_000d;
+        }
+    }
+}
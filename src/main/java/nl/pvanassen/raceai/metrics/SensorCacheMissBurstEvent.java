@@ -0,0 +1,20 @@
+package nl.pvanassen.raceai.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.pvanassen.raceai.SensorCacheMissBurst")
+@Label("Sensor Cache Miss Burst")
+@Category("Race AI")
+@Description("A tick in which many sensor results had to be traced instead of coming from the cache")
+public class SensorCacheMissBurstEvent extends Event {
+
+    @Label("Misses")
+    public int misses;
+
+    @Label("Cars Sensed")
+    public int carsSensed;
+}
@@ -0,0 +1,21 @@
+package nl.pvanassen.raceai.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.pvanassen.raceai.Tick")
+@Label("Tick")
+@Category("Race AI")
+@Description("One track tick: every live car moved, collided, sensed and driven")
+public class TickEvent extends Event {
+
+    @Label("Cars Ticked")
+    public int carsTicked;
+
+    @Label("Live Cars")
+    @Description("Cars still driving after the tick")
+    public int liveCars;
+}
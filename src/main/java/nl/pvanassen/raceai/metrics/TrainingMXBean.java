@@ -0,0 +1,12 @@
+package nl.pvanassen.raceai.metrics;
+
+public interface TrainingMXBean {
+
+    int getLiveCars();
+
+    double getSensorCacheHitRatio();
+
+    long getGenerations();
+
+    double getLastGenerationWallMillis();
+}